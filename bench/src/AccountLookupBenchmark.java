@@ -0,0 +1,91 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The AccountLookupBenchmark class measures the latency of AccountMapping.getAccountBalance
+ * at several account counts. Each run builds a mapping of sequential-looking but shuffled
+ * account identifiers spread over a few banks, then performs random lookups and reports the
+ * mean time per lookup.
+ *
+ * For the smaller sizes it also reports the cost of the linear scan the hash index replaced,
+ * so the two can be compared directly.
+ *
+ * Usage:
+ *   java AccountLookupBenchmark [sizes...]
+ *   (defaults to 1000 100000 10000000)
+ */
+public class AccountLookupBenchmark {
+    private static final int LOOKUPS = 1 << 22;
+    private static final int ROUNDS = 5;
+    private static final int LINEAR_SCAN_LIMIT = 100_000;
+    private static final int BANKS = 4;
+
+    public static void main(String[] args) throws NoSuchException {
+        final int[] sizes = args.length == 0
+                ? new int[] {1_000, 100_000, 10_000_000}
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        for (int size : sizes) {
+            run(size);
+        }
+    }
+
+    private static void run(final int numAccounts) throws NoSuchException {
+        final Random random = new Random(42);
+        final long[] accountKeys = new long[numAccounts];
+        final long[] balances = new long[numAccounts];
+        for (int i = 0; i < numAccounts; i++) {
+            // Spread the identifiers out like real account numbers, each reused at every bank
+            accountKeys[i] = AccountMapping.key(10 + i % BANKS, i / BANKS * 7 + 10_000);
+            balances[i] = i;
+        }
+        shuffle(accountKeys, random);
+
+        final long[] probes = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            probes[i] = accountKeys[random.nextInt(numAccounts)];
+        }
+
+        final AccountMapping mapping = new AccountMapping(accountKeys, balances);
+        double best = Double.MAX_VALUE;
+        long sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            final long start = System.nanoTime();
+            for (long probe : probes) {
+                sink += mapping.getAccountBalance(AccountMapping.bankId(probe), AccountMapping.accountId(probe));
+            }
+            best = Math.min(best, (System.nanoTime() - start) / (double) LOOKUPS);
+        }
+        System.out.printf("accounts=%,d hash lookup: %.1f ns/op%n", numAccounts, best);
+
+        if (numAccounts <= LINEAR_SCAN_LIMIT) {
+            final int scans = Math.max(1, LOOKUPS / numAccounts);
+            final long start = System.nanoTime();
+            for (int i = 0; i < scans; i++) {
+                sink += linearScan(accountKeys, probes[i]);
+            }
+            System.out.printf("accounts=%,d linear scan: %.1f ns/op%n", numAccounts,
+                    (System.nanoTime() - start) / (double) scans);
+        }
+        if (sink == 42) {
+            System.out.println();  // Keep the lookups from being optimised away
+        }
+    }
+
+    private static int linearScan(final long[] accountKeys, final long accountKey) {
+        for (int i = 0; i < accountKeys.length; i++) {
+            if (accountKeys[i] == accountKey) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void shuffle(final long[] values, final Random random) {
+        for (int i = values.length - 1; i > 0; i--) {
+            final int j = random.nextInt(i + 1);
+            final long tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+}
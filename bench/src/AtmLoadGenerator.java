@@ -0,0 +1,112 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The AtmLoadGenerator class opens many concurrent terminal sessions against an AtmServer
+ * and reports sessions per second and command latency percentiles.
+ *
+ * Every session connects first and waits until all sessions are connected, then inserts a
+ * card and cycles through display, deposit and withdraw commands before exiting. The latency
+ * of a command is the time from sending it until the server prints the next action prompt.
+ *
+ * Usage:
+ *   java AtmLoadGenerator PORT SESSIONS COMMANDS_PER_SESSION CARD [CARD...]
+ *   e.g. java AtmLoadGenerator 9000 10000 20 12123451 34234567
+ */
+public class AtmLoadGenerator {
+    private static final String ACTION_PROMPT = "Enter desired action";
+
+    public static void main(String[] args) throws Exception {
+        final int port = Integer.parseInt(args[0]);
+        final int sessions = Integer.parseInt(args[1]);
+        final int commands = Integer.parseInt(args[2]);
+        final String[] cards = Arrays.copyOfRange(args, 3, args.length);
+
+        final long[][] latencies = new long[sessions][];
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch connected = new CountDownLatch(sessions);
+        final CountDownLatch go = new CountDownLatch(1);
+        final Thread[] threads = new Thread[sessions];
+        for (int s = 0; s < sessions; s++) {
+            final int session = s;
+            threads[s] = Thread.ofVirtual().start(() -> {
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                    socket.setTcpNoDelay(true);
+                    connected.countDown();
+                    go.await();
+                    latencies[session] = runSession(socket, cards[session % cards.length], commands);
+                } catch (IOException | InterruptedException e) {
+                    failures.incrementAndGet();
+                    connected.countDown();
+                }
+            });
+        }
+
+        connected.await();
+        final long start = System.nanoTime();
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        final long[] all = Arrays.stream(latencies)
+                .filter(l -> l != null)
+                .flatMapToLong(Arrays::stream)
+                .sorted()
+                .toArray();
+        final int completed = sessions - failures.get();
+        System.out.printf("sessions=%d completed=%d failed=%d in %.2f s -> %.0f sessions/s%n",
+                sessions, completed, failures.get(), seconds, completed / seconds);
+        if (all.length > 0) {
+            System.out.printf("commands=%,d p50=%.1f us p99=%.1f us max=%.1f us%n", all.length,
+                    all[all.length / 2] / 1e3, all[(int) (all.length * 0.99)] / 1e3, all[all.length - 1] / 1e3);
+        }
+    }
+
+    /**
+     * Runs one scripted session over an open connection.
+     *
+     * @return the latency of every command in nanoseconds.
+     */
+    private static long[] runSession(final Socket socket, final String card, final int commands) throws IOException {
+        final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        final PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        final long[] latencies = new long[commands + 1];
+
+        latencies[0] = send(in, out, card);
+        for (int i = 1; i <= commands; i++) {
+            latencies[i] = switch (i % 3) {
+                case 0 -> send(in, out, "deposit\n1");
+                case 1 -> send(in, out, "display");
+                default -> send(in, out, "withdraw\n1");
+            };
+        }
+        out.println("exit");
+        return latencies;
+    }
+
+    /**
+     * Sends a command and waits until the server asks for the next action.
+     *
+     * @return the round trip time in nanoseconds.
+     */
+    private static long send(final BufferedReader in, final PrintWriter out, final String command) throws IOException {
+        final long start = System.nanoTime();
+        out.println(command);
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.startsWith(ACTION_PROMPT)) {
+                return System.nanoTime() - start;
+            }
+        }
+        throw new IOException("Server closed the session");
+    }
+}
@@ -0,0 +1,80 @@
+import java.util.Random;
+
+/**
+ * The BatchSettlementBenchmark class posts the same settlement list to two identical
+ * AccountMappings, once item by item through changeAccountAmount and once through
+ * applyBatch, and reports the time taken by each. It then checks that both produced the
+ * same status for every item and the same final balances.
+ *
+ * About one item in a hundred names an unknown account and withdrawals are large enough
+ * that some are rejected, so the failure paths are exercised too.
+ *
+ * Usage:
+ *   java BatchSettlementBenchmark [accounts] [items] [rounds]
+ */
+public class BatchSettlementBenchmark {
+    private static final int BANK_ID = 12;
+
+    public static void main(String[] args) throws NoSuchException {
+        final int numAccounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        final int numItems = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+        final int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        final Random random = new Random(13);
+        final long[] itemKeys = new long[numItems];
+        final long[] amounts = new long[numItems];
+        for (int i = 0; i < numItems; i++) {
+            final int accountId = random.nextInt(100) == 0 ? numAccounts + i : random.nextInt(numAccounts);
+            itemKeys[i] = AccountMapping.key(BANK_ID, accountId);
+            amounts[i] = random.nextInt(20_000) - 10_500;
+        }
+
+        for (int round = 0; round < rounds; round++) {
+            final AccountMapping single = createMapping(numAccounts);
+            final AccountMapping batch = createMapping(numAccounts);
+            final int[] expected = new int[numItems];
+
+            long start = System.nanoTime();
+            for (int i = 0; i < numItems; i++) {
+                try {
+                    single.changeAccountAmount(AccountMapping.bankId(itemKeys[i]), AccountMapping.accountId(itemKeys[i]), amounts[i]);
+                } catch (AccountMapping.NoSuchAccount e) {
+                    expected[i] = AccountMapping.NO_SUCH_ACCOUNT;
+                } catch (AccountMapping.InsufficientFunds e) {
+                    expected[i] = AccountMapping.INSUFFICIENT_FUNDS;
+                }
+            }
+            final double singleMillis = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            final AccountMapping.BatchResult result = batch.applyBatch(itemKeys, amounts);
+            final double batchMillis = (System.nanoTime() - start) / 1e6;
+
+            for (int i = 0; i < numItems; i++) {
+                if (result.getStatus(i) != expected[i]) {
+                    throw new IllegalStateException("Item " + i + ": batch status " + result.getStatus(i) + ", expected " + expected[i]);
+                }
+            }
+            for (int accountId = 0; accountId < numAccounts; accountId++) {
+                if (single.getAccountBalance(BANK_ID, accountId) != batch.getAccountBalance(BANK_ID, accountId)) {
+                    throw new IllegalStateException("Balances differ for account " + accountId);
+                }
+            }
+            System.out.printf("items=%,d accounts=%,d single: %,.0f ms batch: %,.0f ms (%.1fx) ok=%,d noAccount=%,d insufficient=%,d%n",
+                    numItems, numAccounts, singleMillis, batchMillis, singleMillis / batchMillis,
+                    result.getCount(AccountMapping.OK),
+                    result.getCount(AccountMapping.NO_SUCH_ACCOUNT),
+                    result.getCount(AccountMapping.INSUFFICIENT_FUNDS));
+        }
+    }
+
+    private static AccountMapping createMapping(final int numAccounts) {
+        final long[] accountKeys = new long[numAccounts];
+        final long[] balances = new long[numAccounts];
+        for (int i = 0; i < numAccounts; i++) {
+            accountKeys[i] = AccountMapping.key(BANK_ID, i);
+            balances[i] = 10_000;
+        }
+        return new AccountMapping(accountKeys, balances);
+    }
+}
@@ -0,0 +1,115 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The BenchmarkDiff class compares two JMH result files written with "-rf csv", for example
+ * the results of the previous release and of the current build. Benchmarks are matched by
+ * name and parameters, and each one is printed with its old score, new score and relative
+ * change. A change is a regression when it is worse by more than the threshold: slower for
+ * time-per-operation modes, fewer operations for throughput mode.
+ *
+ * The process exits with status 1 if any benchmark regressed, so it can gate a build.
+ *
+ * Usage:
+ *   java BenchmarkDiff BASELINE.csv CURRENT.csv [thresholdPercent]
+ *   (threshold defaults to 5)
+ */
+public class BenchmarkDiff {
+    public static void main(String[] args) throws IOException {
+        final Map<String, Result> baseline = read(Path.of(args[0]));
+        final Map<String, Result> current = read(Path.of(args[1]));
+        final double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 5;
+
+        int regressions = 0;
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            final Result now = entry.getValue();
+            final Result before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-70s %14s %14.3f %-8s %9s%n", entry.getKey(), "-", now.score, now.unit, "new");
+                continue;
+            }
+            final double change = (now.score - before.score) / before.score * 100;
+            final double worse = now.mode.equals("thrpt") ? -change : change;  // Higher throughput is better
+            final boolean regressed = worse > threshold;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-70s %14.3f %14.3f %-8s %+8.1f%%%s%n", entry.getKey(), before.score, now.score,
+                    now.unit, change, regressed ? "  REGRESSION" : "");
+        }
+        for (String name : baseline.keySet()) {
+            if (!current.containsKey(name)) {
+                System.out.printf("%-70s %9s%n", name, "removed");
+            }
+        }
+        System.out.printf("%d of %d benchmarks regressed by more than %.1f%%%n", regressions, current.size(), threshold);
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * A single benchmark score from a result file.
+     */
+    private record Result(String mode, double score, String unit) {
+    }
+
+    /**
+     * Reads a JMH CSV result file, keyed by benchmark name followed by its parameter values.
+     */
+    private static Map<String, Result> read(final Path path) throws IOException {
+        final List<String> lines = Files.readAllLines(path);
+        final List<String> header = split(lines.get(0));
+        final int benchmark = header.indexOf("Benchmark");
+        final int mode = header.indexOf("Mode");
+        final int score = header.indexOf("Score");
+        final int unit = header.indexOf("Unit");
+        final Map<String, Result> results = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isBlank()) {
+                continue;
+            }
+            final List<String> fields = split(line);
+            final StringBuilder name = new StringBuilder(fields.get(benchmark));
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).startsWith("Param: ") && i < fields.size() && !fields.get(i).isEmpty()) {
+                    name.append(' ').append(header.get(i).substring(7)).append('=').append(fields.get(i));
+                }
+            }
+            results.put(name.toString(), new Result(fields.get(mode), Double.parseDouble(fields.get(score)), fields.get(unit)));
+        }
+        return results;
+    }
+
+    /**
+     * Splits one CSV line into fields, removing the quotes JMH puts around text values.
+     */
+    private static List<String> split(final String line) {
+        final List<String> fields = new ArrayList<>();
+        final StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');  // Escaped quote inside a quoted field
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
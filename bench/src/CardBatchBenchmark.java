@@ -0,0 +1,61 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * The CardBatchBenchmark class writes a file of random card numbers, a tenth of them
+ * invalid, and measures how fast CardBatchValidator screens it.
+ *
+ * Usage:
+ *   java CardBatchBenchmark [lines] [file]
+ */
+public class CardBatchBenchmark {
+    public static void main(String[] args) throws IOException {
+        final int lines = args.length > 0 ? Integer.parseInt(args[0]) : 20_000_000;
+        final Path file = args.length > 1 ? Path.of(args[1]) : Files.createTempFile("cards", ".txt");
+
+        final Random random = new Random(11);
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < lines; i++) {
+                final int prefix = 1_000_000 + random.nextInt(9_000_000);
+                int card = prefix * 10 + luhnCheckDigit(prefix);
+                if (random.nextInt(10) == 0) {
+                    card = prefix * 10 + (card + 1) % 10;  // Corrupt the check digit
+                }
+                out.write(Integer.toString(card));
+                out.newLine();
+            }
+        }
+
+        final long bytes = Files.size(file);
+        for (int round = 0; round < 5; round++) {
+            final long start = System.nanoTime();
+            final CardBatchValidator.Report report = CardBatchValidator.validate(file);
+            final long elapsed = System.nanoTime() - start;
+            System.out.printf("lines=%,d valid=%,d invalid=%,d in %.1f ms (%.0f MB/s)%n",
+                    lines, report.getValid(), report.getInvalid(), elapsed / 1e6, bytes / (elapsed / 1e3));
+        }
+        if (args.length < 2) {
+            Files.delete(file);
+        }
+    }
+
+    private static int luhnCheckDigit(final int prefix) {
+        int sum = 0;
+        boolean doubled = true;
+        for (int n = prefix; n > 0; n /= 10) {
+            int d = n % 10;
+            if (doubled) {
+                d *= 2;
+                if (d > 9) {
+                    d -= 9;
+                }
+            }
+            sum += d;
+            doubled = !doubled;
+        }
+        return (10 - sum % 10) % 10;
+    }
+}
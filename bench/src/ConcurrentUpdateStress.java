@@ -0,0 +1,83 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The ConcurrentUpdateStress class drives many threads of deposits and withdrawals against
+ * one shared AccountMapping and then checks that no update was lost and no balance went
+ * negative. Every deposit is for one unit and every withdrawal for one unit, so the expected
+ * final total is the starting total plus successful deposits minus successful withdrawals.
+ *
+ * Usage:
+ *   java ConcurrentUpdateStress [threads] [accounts] [opsPerThread]
+ */
+public class ConcurrentUpdateStress {
+    public static void main(String[] args) throws Exception {
+        final int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        final int numAccounts = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        final int opsPerThread = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+
+        final int bankId = 12;
+        final int[] accountIds = new int[numAccounts];
+        final long[] accountKeys = new long[numAccounts];
+        final long[] balances = new long[numAccounts];
+        for (int i = 0; i < numAccounts; i++) {
+            accountIds[i] = 10_000 + i;
+            accountKeys[i] = AccountMapping.key(bankId, accountIds[i]);
+            balances[i] = 10;
+        }
+        final AccountMapping mapping = new AccountMapping(accountKeys, balances);
+        final LongAdder deposits = new LongAdder();
+        final LongAdder withdrawals = new LongAdder();
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    for (int i = 0; i < opsPerThread; i++) {
+                        final int accountId = accountIds[random.nextInt(numAccounts)];
+                        if (random.nextBoolean()) {
+                            mapping.changeAccountAmount(bankId, accountId, 1);
+                            deposits.increment();
+                        } else {
+                            try {
+                                mapping.changeAccountAmount(bankId, accountId, -1);
+                                withdrawals.increment();
+                            } catch (AccountMapping.InsufficientFunds e) {
+                                // Expected when an account is drained
+                            }
+                        }
+                    }
+                } catch (InterruptedException | NoSuchException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            workers[t].start();
+        }
+
+        final long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        final long elapsed = System.nanoTime() - begin;
+
+        long total = 0;
+        for (int accountId : accountIds) {
+            final long balance = mapping.getAccountBalance(bankId, accountId);
+            if (balance < 0) {
+                throw new IllegalStateException("Account " + accountId + " went negative: " + balance);
+            }
+            total += balance;
+        }
+        final long expected = numAccounts * 10L + deposits.sum() - withdrawals.sum();
+        System.out.printf("threads=%d accounts=%d ops=%,d in %.1f ms, total=%d expected=%d%n",
+                threads, numAccounts, (long) threads * opsPerThread, elapsed / 1e6, total, expected);
+        if (total != expected) {
+            throw new IllegalStateException("Lost updates detected");
+        }
+    }
+}
@@ -0,0 +1,183 @@
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * The CreditCardBenchmark class compares the original CreditCard constructor, the current
+ * constructor and the allocation-free CreditCard.decode fast path. It reports nanoseconds
+ * and bytes allocated per card for a mix of valid and invalid card numbers.
+ *
+ * The original constructor is reproduced in LegacyCreditCard so the comparison stays
+ * meaningful after CreditCard itself has changed.
+ *
+ * Usage:
+ *   java CreditCardBenchmark [invalidPercent]
+ */
+public class CreditCardBenchmark {
+    private static final int CARDS = 1 << 20;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        final int invalidPercent = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        final int[] cards = generateCards(invalidPercent, new Random(7));
+
+        for (int round = 0; round < ROUNDS; round++) {
+            final boolean report = round == ROUNDS - 1;  // Earlier rounds only warm up the JIT
+            measure("legacy constructor", report, () -> {
+                long sink = 0;
+                for (int card : cards) {
+                    try {
+                        sink += new LegacyCreditCard(card).accountId;
+                    } catch (IllegalArgumentException e) {
+                        sink--;
+                    }
+                }
+                return sink;
+            });
+            measure("constructor", report, () -> {
+                long sink = 0;
+                for (int card : cards) {
+                    try {
+                        sink += new CreditCard(card).getAccountId();
+                    } catch (IllegalArgumentException e) {
+                        sink--;
+                    }
+                }
+                return sink;
+            });
+            measure("decode", report, () -> {
+                long sink = 0;
+                for (int card : cards) {
+                    final long decoded = CreditCard.decode(card);
+                    sink += CreditCard.isValid(decoded) ? CreditCard.accountId(decoded) : -1;
+                }
+                return sink;
+            });
+        }
+    }
+
+    private static void measure(final String name, final boolean report, final java.util.function.LongSupplier body) {
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+        final long start = System.nanoTime();
+        final long sink = body.getAsLong();
+        final long elapsed = System.nanoTime() - start;
+        final long bytes = threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+        if (report) {
+            System.out.printf("%-20s %7.1f ns/card %7.1f B/card (checksum %d)%n",
+                    name, elapsed / (double) CARDS, bytes / (double) CARDS, sink);
+        }
+    }
+
+    private static int[] generateCards(final int invalidPercent, final Random random) {
+        final int[] cards = new int[CARDS];
+        for (int i = 0; i < CARDS; i++) {
+            final int prefix = 1_000_000 + random.nextInt(9_000_000);
+            final int valid = prefix * 10 + luhnCheckDigit(prefix);
+            cards[i] = random.nextInt(100) < invalidPercent ? valid + 1 - (valid % 10 == 9 ? 10 : 0) : valid;
+        }
+        return cards;
+    }
+
+    private static int luhnCheckDigit(final int prefix) {
+        int sum = 0;
+        boolean doubled = true;
+        for (int n = prefix; n > 0; n /= 10) {
+            int d = n % 10;
+            if (doubled) {
+                d *= 2;
+                if (d > 9) {
+                    d -= 9;
+                }
+            }
+            sum += d;
+            doubled = !doubled;
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    /**
+     * Copy of the original CreditCard constructor, kept as the benchmark baseline.
+     */
+    private static final class LegacyCreditCard {
+        private static final int CARD_LENGTH = 8;
+        private static final int BANK_ID_LENGTH = 2;
+        private static final int ACCOUNT_ID_LENGTH = 5;
+
+        private final int bankId;
+        private final int accountId;
+        private final int checkDigit;
+
+        LegacyCreditCard(final int cardNum) {
+            if (numDigits(cardNum) != CARD_LENGTH) {
+                throw new IllegalArgumentException("Card number must be length " + CARD_LENGTH);
+            }
+            int[] cardDigits = splitIntoDigits(cardNum);
+            this.bankId = extractBankId(cardDigits);
+            this.accountId = extractAccountId(cardDigits);
+            this.checkDigit = cardDigits[CARD_LENGTH - 1];
+            if (!verifyCheckDigit(cardNum)) {
+                throw new IllegalArgumentException("Check digit, " + checkDigit +
+                        ", for card with number: " + cardNum + " is invalid");
+            }
+        }
+
+        private static int digitsToInt(int[] digits) {
+            int number = 0;
+            for (int digit : digits) {
+                number = number * 10 + digit;
+            }
+            return number;
+        }
+
+        private static int extractBankId(int[] cardNums) {
+            int[] bankIdDigits = new int[BANK_ID_LENGTH];
+            System.arraycopy(cardNums, 0, bankIdDigits, 0, BANK_ID_LENGTH);
+            return digitsToInt(bankIdDigits);
+        }
+
+        private static int extractAccountId(int[] cardNums) {
+            int[] accountIdDigits = new int[ACCOUNT_ID_LENGTH];
+            System.arraycopy(cardNums, BANK_ID_LENGTH, accountIdDigits, 0, ACCOUNT_ID_LENGTH);
+            return digitsToInt(accountIdDigits);
+        }
+
+        private static int[] splitIntoDigits(final int num) {
+            int length = numDigits(num);
+            int[] digits = new int[length];
+            int temp = num;
+            for (int i = length - 1; i >= 0; i--) {
+                digits[i] = temp % 10;
+                temp /= 10;
+            }
+            return digits;
+        }
+
+        private static int numDigits(final int num) {
+            return (int) (Math.floor(Math.log10(num)) + 1);
+        }
+
+        private boolean verifyCheckDigit(final int cardNum) {
+            String cardNumber = String.valueOf(cardNum);
+            int sum = 0;
+            boolean alternate = false;
+            for (int i = cardNumber.length() - 1; i >= 0; i--) {
+                int n;
+                try {
+                    n = Integer.parseInt(cardNumber.substring(i, i + 1));
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+                if (alternate) {
+                    n *= 2;
+                    if (n > 9) {
+                        n -= 9;
+                    }
+                }
+                sum += n;
+                alternate = !alternate;
+            }
+            return (sum % 10 == 0);
+        }
+    }
+}
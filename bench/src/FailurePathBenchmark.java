@@ -0,0 +1,153 @@
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+/**
+ * The FailurePathBenchmark class measures workloads where most requests fail: unknown banks,
+ * unknown accounts and withdrawals larger than the balance. Each workload is run through the
+ * exception-throwing methods and through their result-code counterparts, and reports the
+ * time and bytes allocated per request.
+ *
+ * For comparison it also throws LegacyFailure, an ordinary exception that captures its stack
+ * trace and builds its message up front, the way the lookup exceptions used to.
+ *
+ * Usage:
+ *   java FailurePathBenchmark [failurePercent]
+ */
+public class FailurePathBenchmark {
+    private static final int REQUESTS = 1 << 20;
+    private static final int ROUNDS = 5;
+    private static final int ACCOUNTS = 100_000;
+    private static final int BANK_ID = 12;
+
+    public static void main(String[] args) {
+        final int failurePercent = args.length > 0 ? Integer.parseInt(args[0]) : 90;
+        final Random random = new Random(17);
+
+        final BankMapping bankMapping = new BankMapping(new int[] {10, 11, BANK_ID, 13}, new String[] {"A", "B", "C", "D"});
+        final long[] accountKeys = new long[ACCOUNTS];
+        final long[] balances = new long[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accountKeys[i] = AccountMapping.key(BANK_ID, i);
+            balances[i] = 1_000;
+        }
+        final AccountMapping accountMapping = new AccountMapping(accountKeys, balances);
+
+        final int[] bankIds = new int[REQUESTS];
+        final int[] accountIds = new int[REQUESTS];
+        final long[] amounts = new long[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            final boolean fail = random.nextInt(100) < failurePercent;
+            bankIds[i] = fail ? 50 + random.nextInt(50) : BANK_ID;
+            accountIds[i] = fail ? ACCOUNTS + random.nextInt(ACCOUNTS) : random.nextInt(ACCOUNTS);
+            amounts[i] = fail ? -1_000_000 : 0;  // Successful changes leave the balances as they are
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            final boolean report = round == ROUNDS - 1;  // Earlier rounds only warm up the JIT
+            measure("legacy exception", report, () -> {
+                long sink = 0;
+                for (int i = 0; i < REQUESTS; i++) {
+                    try {
+                        sink += legacyGetBankName(bankMapping, bankIds[i]).length();
+                    } catch (LegacyFailure e) {
+                        sink += e.getMessage().length();
+                    }
+                }
+                return sink;
+            });
+            measure("getBankName", report, () -> {
+                long sink = 0;
+                for (int i = 0; i < REQUESTS; i++) {
+                    try {
+                        sink += bankMapping.getBankName(bankIds[i]).length();
+                    } catch (BankMapping.NoSuchBank e) {
+                        sink += e.getId();
+                    }
+                }
+                return sink;
+            });
+            measure("tryGetBankName", report, () -> {
+                long sink = 0;
+                for (int i = 0; i < REQUESTS; i++) {
+                    final String name = bankMapping.tryGetBankName(bankIds[i]);
+                    sink += name == null ? bankIds[i] : name.length();
+                }
+                return sink;
+            });
+            measure("getAccountBalance", report, () -> {
+                long sink = 0;
+                for (int i = 0; i < REQUESTS; i++) {
+                    try {
+                        sink += accountMapping.getAccountBalance(BANK_ID, accountIds[i]);
+                    } catch (AccountMapping.NoSuchAccount e) {
+                        sink += e.getId();
+                    }
+                }
+                return sink;
+            });
+            measure("tryGetAccountBalance", report, () -> {
+                long sink = 0;
+                for (int i = 0; i < REQUESTS; i++) {
+                    final long balance = accountMapping.tryGetAccountBalance(BANK_ID, accountIds[i]);
+                    sink += balance == AccountMapping.NO_BALANCE ? accountIds[i] : balance;
+                }
+                return sink;
+            });
+            measure("changeAccountAmount", report, () -> {
+                long sink = 0;
+                for (int i = 0; i < REQUESTS; i++) {
+                    try {
+                        accountMapping.changeAccountAmount(BANK_ID, accountIds[i] % ACCOUNTS, amounts[i]);
+                    } catch (AccountMapping.InsufficientFunds e) {
+                        sink += e.getBalance();
+                    } catch (AccountMapping.NoSuchAccount e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return sink;
+            });
+            measure("tryChangeAccountAmount", report, () -> {
+                long sink = 0;
+                for (int i = 0; i < REQUESTS; i++) {
+                    sink += accountMapping.tryChangeAccountAmount(BANK_ID, accountIds[i] % ACCOUNTS, amounts[i]);
+                }
+                return sink;
+            });
+        }
+    }
+
+    /**
+     * LegacyFailure behaves like the lookup exceptions did before they became stackless:
+     * it fills in its stack trace and formats its message when it is created.
+     */
+    private static final class LegacyFailure extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        LegacyFailure(final int bankId) {
+            super("No Such Bank With Id: " + bankId);
+        }
+    }
+
+    private static String legacyGetBankName(final BankMapping bankMapping, final int bankId) throws LegacyFailure {
+        final String name = bankMapping.tryGetBankName(bankId);
+        if (name == null) {
+            throw new LegacyFailure(bankId);
+        }
+        return name;
+    }
+
+    private static void measure(final String name, final boolean report, final LongSupplier body) {
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+        final long start = System.nanoTime();
+        final long sink = body.getAsLong();
+        final long elapsed = System.nanoTime() - start;
+        final long bytes = threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+        if (report) {
+            System.out.printf("%-24s %7.1f ns/request %7.1f B/request (checksum %d)%n",
+                    name, elapsed / (double) REQUESTS, bytes / (double) REQUESTS, sink);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * The HistoryBenchmark class fills a TransactionHistory with random transactions and reports
+ * the heap used per transaction, the time per append, and the time of each kind of query.
+ *
+ * The same transactions are also recorded in a history that keeps a single chunk on the
+ * heap and spills the rest to a memory-mapped file, and every last-N query is checked to
+ * give the same results from both.
+ *
+ * Usage:
+ *   java HistoryBenchmark [transactions] [accounts] [queries]
+ */
+public class HistoryBenchmark {
+    private static final int BANK_ID = 12;
+
+    public static void main(String[] args) throws Exception {
+        final int transactions = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        final int numAccounts = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        final int queries = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+        final int chunks = (transactions + TransactionHistory.CHUNK_SIZE - 1) / TransactionHistory.CHUNK_SIZE;
+        final ATM.Action[] actions = {ATM.Action.DEPOSIT, ATM.Action.WITHDRAW, ATM.Action.TRANSFER};
+
+        final long heapBefore = usedHeap();
+        final TransactionHistory history = new TransactionHistory(chunks);
+        final Random random = new Random(17);
+        long start = System.nanoTime();
+        for (int i = 0; i < transactions; i++) {
+            history.record(AccountMapping.key(BANK_ID, random.nextInt(numAccounts)),
+                    actions[i % actions.length], random.nextInt(100_000) - 50_000);
+        }
+        final double appendNanos = (System.nanoTime() - start) / (double) transactions;
+        final double bytesPer = (usedHeap() - heapBefore) / (double) transactions;
+        System.out.printf("transactions=%,d accounts=%,d append: %.1f ns heap: %.1f bytes/transaction%n",
+                transactions, numAccounts, appendNanos, bytesPer);
+
+        final TransactionHistory.Records records = new TransactionHistory.Records(10);
+        long found = 0;
+        for (int round = 0; round < 2; round++) {
+            start = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                found += history.last(AccountMapping.key(BANK_ID, random.nextInt(numAccounts)), 10, records);
+            }
+            final double lastMicros = (System.nanoTime() - start) / 1e3 / queries;
+
+            final long now = System.currentTimeMillis();
+            start = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                found += history.range(AccountMapping.key(BANK_ID, random.nextInt(numAccounts)),
+                        now - 60_000, now + 1, records);
+            }
+            final double accountRangeMicros = (System.nanoTime() - start) / 1e3 / queries;
+
+            start = System.nanoTime();
+            for (int i = 0; i < queries / 100; i++) {
+                found += history.range(now - 60_000, now + 1, 100, records);
+            }
+            final double rangeMicros = (System.nanoTime() - start) / 1e3 / (queries / 100);
+            System.out.printf("last 10: %.2f us  account range: %.2f us  global range (100): %.2f us  (found %,d)%n",
+                    lastMicros, accountRangeMicros, rangeMicros, found);
+        }
+
+        checkSpill(history, transactions, numAccounts, actions);
+        history.close();
+    }
+
+    /**
+     * Replays the same transactions into a history that spills all but one chunk, and checks
+     * that it answers last-N queries like the in-memory history.
+     */
+    private static void checkSpill(final TransactionHistory expected, final int transactions,
+                                   final int numAccounts, final ATM.Action[] actions) throws Exception {
+        final Path spillPath = Files.createTempFile("history", ".spill");
+        final int spilledChunks = (transactions - 1) / TransactionHistory.CHUNK_SIZE;  // All but the one on the heap
+        final TransactionHistory.Records want = new TransactionHistory.Records(10);
+        final TransactionHistory.Records got = new TransactionHistory.Records(10);
+        try (TransactionHistory spilled = new TransactionHistory(1, spillPath, Math.max(1, spilledChunks))) {
+            final Random random = new Random(17);
+            for (int i = 0; i < transactions; i++) {
+                spilled.record(AccountMapping.key(BANK_ID, random.nextInt(numAccounts)),
+                        actions[i % actions.length], random.nextInt(100_000) - 50_000);
+            }
+            for (int accountId = 0; accountId < numAccounts; accountId += 97) {
+                final long key = AccountMapping.key(BANK_ID, accountId);
+                expected.last(key, 10, want);
+                spilled.last(key, 10, got);
+                if (want.size() != got.size()) {
+                    throw new IllegalStateException("Spilled history differs for account " + accountId);
+                }
+                for (int i = 0; i < want.size(); i++) {
+                    if (want.getAmount(i) != got.getAmount(i) || want.getAction(i) != got.getAction(i)
+                            || got.getAccountKey(i) != key) {
+                        throw new IllegalStateException("Spilled history differs for account " + accountId);
+                    }
+                }
+            }
+            System.out.printf("spilled history matches (%,d bytes spilled)%n", Files.size(spillPath));
+        } finally {
+            Files.delete(spillPath);
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,54 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.Scanner;
+
+/**
+ * The InputScannerBenchmark class compares the throughput of the Scanner-based InputScanner
+ * with BufferedInputScanner on an account file held in memory: alternating lines of account
+ * IDs and balances, read with nextIntLine and either nextDoubleLine or nextMoneyLine.
+ *
+ * Usage:
+ *   java InputScannerBenchmark [accounts]
+ */
+public class InputScannerBenchmark {
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        final int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        final Random random = new Random(3);
+        final ByteArrayOutputStream text = new ByteArrayOutputStream();
+        for (int i = 0; i < accounts; i++) {
+            final String line = random.nextInt(100_000) + "\n" + random.nextInt(1_000_000) / 100.0 + "\n";
+            text.writeBytes(line.getBytes(StandardCharsets.UTF_8));
+        }
+        final byte[] bytes = text.toByteArray();
+
+        for (int round = 0; round < ROUNDS; round++) {
+            final boolean report = round == ROUNDS - 1;  // Earlier rounds only warm up the JIT
+            measure("Scanner double", report, bytes, accounts, false,
+                    new InputScanner(new Scanner(new ByteArrayInputStream(bytes))));
+            measure("Scanner money", report, bytes, accounts, true,
+                    new InputScanner(new Scanner(new ByteArrayInputStream(bytes))));
+            measure("Buffered double", report, bytes, accounts, false,
+                    new BufferedInputScanner(new ByteArrayInputStream(bytes)));
+            measure("Buffered money", report, bytes, accounts, true,
+                    new BufferedInputScanner(new ByteArrayInputStream(bytes)));
+        }
+    }
+
+    private static void measure(final String name, final boolean report, final byte[] bytes,
+                                final int accounts, final boolean money, final InputScanner input) {
+        final long start = System.nanoTime();
+        double sink = 0;
+        for (int i = 0; i < accounts; i++) {
+            sink += input.nextIntLine();
+            sink += money ? input.nextMoneyLine() / (double) Money.MINOR_PER_UNIT : input.nextDoubleLine();
+        }
+        final long elapsed = System.nanoTime() - start;
+        if (report) {
+            System.out.printf("%-22s %8.1f MB/s (checksum %.2f)%n", name, bytes.length / (elapsed / 1e3), sink);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The JournalBenchmark class measures transactions per second through a journaled
+ * AccountMapping in each durability mode. A number of threads deposit into random accounts
+ * for a fixed time, and every deposit waits until its journal record is durable.
+ *
+ * Usage:
+ *   java JournalBenchmark [threads] [seconds] [directory]
+ */
+public class JournalBenchmark {
+    private static final int BANK_ID = 12;
+    private static final int ACCOUNTS = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        final int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        final int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        final Path dir = args.length > 2 ? Path.of(args[2]) : Files.createTempDirectory("journal");
+
+        for (TransactionJournal.Durability durability : TransactionJournal.Durability.values()) {
+            final Path file = dir.resolve("bench-" + durability + ".journal");
+            Files.deleteIfExists(file);
+            final long[] accountKeys = new long[ACCOUNTS];
+            for (int i = 0; i < ACCOUNTS; i++) {
+                accountKeys[i] = AccountMapping.key(BANK_ID, i);
+            }
+            final AccountMapping mapping = new AccountMapping(accountKeys, new long[ACCOUNTS]);
+            try (TransactionJournal journal = TransactionJournal.open(file, durability)) {
+                mapping.attachJournal(journal);
+                final long ops = run(mapping, threads, seconds);
+                System.out.printf("%-6s threads=%d: %,.0f tx/s%n", durability, threads, ops / (double) seconds);
+            }
+            Files.delete(file);
+        }
+    }
+
+    private static long run(final AccountMapping mapping, final int threads, final int seconds) throws Exception {
+        final LongAdder ops = new LongAdder();
+        final CountDownLatch start = new CountDownLatch(1);
+        final long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        final Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    while (System.nanoTime() < deadline) {
+                        mapping.changeAccountAmount(BANK_ID, random.nextInt(ACCOUNTS), 1);
+                        ops.increment();
+                    }
+                } catch (InterruptedException | NoSuchException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return ops.sum();
+    }
+}
@@ -0,0 +1,89 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * The MetricsOverheadBenchmark class measures what AtmMetrics adds to each ATM step: the
+ * cost and allocation of recording a latency or a failure from one thread, and the cost per
+ * record when several threads share one AtmMetrics. Durations are spread over several
+ * orders of magnitude so that many histogram buckets are touched.
+ *
+ * Usage:
+ *   java MetricsOverheadBenchmark [threads]
+ */
+public class MetricsOverheadBenchmark {
+    private static final int OPS = 1 << 24;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws InterruptedException {
+        final int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        final AtmMetrics metrics = new AtmMetrics();
+        final ATM.Action[] actions = ATM.Action.values();
+        final ATM.Failure[] failures = ATM.Failure.values();
+
+        for (int round = 0; round < ROUNDS; round++) {
+            final boolean report = round == ROUNDS - 1;  // Earlier rounds only warm up the JIT
+            measure("actionCompleted", report, () -> {
+                for (int i = 0; i < OPS; i++) {
+                    metrics.actionCompleted(actions[i & 3], 200 + (i & 0xFFFF));
+                }
+            });
+            measure("cardInserted", report, () -> {
+                for (int i = 0; i < OPS; i++) {
+                    metrics.cardInserted(500L << (i & 15));
+                }
+            });
+            measure("failed", report, () -> {
+                for (int i = 0; i < OPS; i++) {
+                    metrics.failed(failures[i % failures.length]);
+                }
+            });
+            measure("nanoTime pair", report, () -> {
+                long sink = 0;
+                for (int i = 0; i < OPS; i++) {
+                    final long started = System.nanoTime();
+                    sink += System.nanoTime() - started;
+                }
+                if (sink == 42) {
+                    System.out.println();  // Keep the calls from being optimised away
+                }
+            });
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                for (int i = 0; i < OPS; i++) {
+                    metrics.actionCompleted(actions[i & 3], 200 + (i & 0xFFFF));
+                }
+            });
+            workers[t].start();
+        }
+        final long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        System.out.printf("%-20s %7.1f ns/op across %d threads%n", "shared record",
+                (System.nanoTime() - begin) / ((double) OPS * threads), threads);
+        metrics.write(System.out);
+    }
+
+    private static void measure(final String name, final boolean report, final Runnable body) {
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+        final long start = System.nanoTime();
+        body.run();
+        final long elapsed = System.nanoTime() - start;
+        final long bytes = threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+        if (report) {
+            System.out.printf("%-20s %7.1f ns/op %7.3f B/op%n", name, elapsed / (double) OPS, bytes / (double) OPS);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * The OffHeapStoreBenchmark class compares the heap and off-heap AccountStores for a large
+ * number of accounts. It loads the accounts, reports the heap and direct memory they take
+ * once collected, and then runs a session-like workload that updates random balances while
+ * allocating short- and medium-lived garbage, recording every collector pause. Finally it
+ * times a full collection with all the accounts live.
+ *
+ * Run each kind in its own JVM so that one store's garbage does not count against the other,
+ * with a heap large enough for the AccountIndex, which stays on the heap either way:
+ *   java -Xmx4g OffHeapStoreBenchmark heap 50000000
+ *   java -Xmx4g OffHeapStoreBenchmark off-heap 50000000
+ *
+ * Usage:
+ *   java OffHeapStoreBenchmark [heap|off-heap] [accounts] [seconds]
+ */
+public class OffHeapStoreBenchmark {
+    private static final int BANK_ID = 12;
+    private static final int RETAINED = 1 << 18;  // Objects kept alive long enough to be promoted
+
+    public static void main(String[] args) throws Exception {
+        final AccountStore.Kind kind = args.length > 0 ? AccountStore.Kind.parse(args[0]) : AccountStore.Kind.HEAP;
+        final int numAccounts = args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000;
+        final int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        long started = System.nanoTime();
+        final AccountMapping mapping = load(kind, numAccounts);
+        final long loadNanos = System.nanoTime() - started;
+        System.gc();
+        final long heapBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        final long directBytes = directMemoryUsed();
+        System.out.printf("store=%s accounts=%,d loaded in %.1f s: heap %,d MB, direct %,d MB%n",
+                kind, numAccounts, loadNanos / 1e9, heapBytes >> 20, directBytes >> 20);
+
+        final List<Long> pauses = new ArrayList<>();
+        listenForPauses(pauses);
+        final long operations = runWorkload(mapping, numAccounts, seconds);
+        final long[] young = summarize(pauses);
+        System.out.printf("workload: %,d updates/s, %d pauses, total %d ms, max %d ms, mean %.1f ms%n",
+                operations / seconds, young[0], young[1], young[2], young[0] == 0 ? 0.0 : young[1] / (double) young[0]);
+
+        pauses.clear();
+        started = System.nanoTime();
+        System.gc();
+        System.out.printf("full collection: %.0f ms%n", (System.nanoTime() - started) / 1e6);
+        if (mapping.tryGetAccountBalance(BANK_ID, 0) == 42) {
+            System.out.println();  // Keep the mapping live through the full collection
+        }
+    }
+
+    private static AccountMapping load(final AccountStore.Kind kind, final int numAccounts) {
+        final long[] accountKeys = new long[numAccounts];
+        final long[] balances = new long[numAccounts];
+        for (int i = 0; i < numAccounts; i++) {
+            accountKeys[i] = AccountMapping.key(BANK_ID, i);
+            balances[i] = 1_000_000;
+        }
+        return new AccountMapping(accountKeys, balances, kind);  // The arrays become garbage here
+    }
+
+    /**
+     * Updates random balances and formats each new balance as a session would, keeping a
+     * ring of recent results alive so that some garbage survives into the old generation.
+     */
+    private static long runWorkload(final AccountMapping mapping, final int numAccounts, final int seconds) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final String[] retained = new String[RETAINED];
+        final long end = System.nanoTime() + seconds * 1_000_000_000L;
+        long operations = 0;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 1024; i++) {  // Check the clock once per batch of requests
+                final int accountId = random.nextInt(numAccounts);
+                mapping.tryChangeAccountAmount(BANK_ID, accountId, (i & 1) == 0 ? 100 : -100);
+                final String line = "Chase | Account Balance: " + Money.format(mapping.tryGetAccountBalance(BANK_ID, accountId));
+                retained[random.nextInt(RETAINED)] = line;
+            }
+            operations += 1024;
+        }
+        return operations;
+    }
+
+    private static void listenForPauses(final List<Long> pauses) {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector.getName().contains("Concurrent")) {
+                continue;  // Concurrent cycles run alongside the application, not as pauses
+            }
+            ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                    final GarbageCollectionNotificationInfo info =
+                            GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                    synchronized (pauses) {
+                        pauses.add(info.getGcInfo().getDuration());
+                    }
+                }
+            }, null, null);
+        }
+    }
+
+    /**
+     * @return the count, total and maximum of the pauses, in milliseconds.
+     */
+    private static long[] summarize(final List<Long> pauses) {
+        synchronized (pauses) {
+            long total = 0;
+            long max = 0;
+            for (long pause : pauses) {
+                total += pause;
+                max = Math.max(max, pause);
+            }
+            return new long[] {pauses.size(), total, max};
+        }
+    }
+
+    private static long directMemoryUsed() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+}
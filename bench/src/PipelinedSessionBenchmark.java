@@ -0,0 +1,122 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+
+/**
+ * The PipelinedSessionBenchmark class measures one ATM session replaying a script of
+ * commands that a scripted client sends all at once, as the console session runs it:
+ * - current: java.util.Scanner input and output that flushes every line, like System.out.
+ * - buffered: BufferedInputScanner input and the same output.
+ * - pipelined: BufferedInputScanner input, a 64 KB output buffer and ATM pipelining, so
+ *   that responses leave in one write per batch.
+ * Output goes to a file, /dev/null by default, through a stream that counts the writes
+ * reaching it. The script mixes display, deposit, withdraw and mixed-case commands.
+ *
+ * Usage:
+ *   java PipelinedSessionBenchmark [commands] [rounds] [outputFile]
+ */
+public class PipelinedSessionBenchmark {
+    private static final int BANK_ID = 12;
+    private static final int ACCOUNT_ID = 12345;
+    private static final int CARD_NUMBER = 12123451;  // Bank 12, account 12345, Luhn check digit 1
+    private static final int PIPELINE_BUFFER_SIZE = 64 * 1024;
+
+    private static final String[] MODES = {"current", "buffered", "pipelined"};
+
+    public static void main(String[] args) throws IOException {
+        final int commands = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        final String outputFile = args.length > 2 ? args[2] : "/dev/null";
+        final byte[] script = buildScript(commands);
+
+        run("warmup", script, outputFile);  // Compile every path before timing
+        for (String mode : MODES) {
+            double best = Double.MAX_VALUE;
+            long writes = 0;
+            for (int round = 0; round < rounds; round++) {
+                final long started = System.nanoTime();
+                writes = run(mode, script, outputFile);
+                best = Math.min(best, (System.nanoTime() - started) / 1e9);
+            }
+            System.out.printf("%-10s %,d commands in %.2f s: %,12.0f commands/s, %,d writes%n",
+                    mode, commands, best, commands / best, writes);
+        }
+    }
+
+    /**
+     * Replays the script in one session of the given mode ("warmup" runs them all).
+     *
+     * @return the number of writes that reached the output file.
+     */
+    private static long run(final String mode, final byte[] script, final String outputFile) throws IOException {
+        if (mode.equals("warmup")) {
+            for (String each : MODES) {
+                run(each, script, outputFile);
+            }
+            return 0;
+        }
+        final AccountMapping accountMapping = new AccountMapping(
+                new long[] {AccountMapping.key(BANK_ID, ACCOUNT_ID)}, new long[] {Long.MAX_VALUE / 2});
+        final BankMapping bankMapping = new BankMapping(new int[] {BANK_ID}, new String[] {"Chase"});
+        final boolean pipelined = mode.equals("pipelined");
+        final InputScanner input = mode.equals("current")
+                ? new InputScanner(new Scanner(new ByteArrayInputStream(script), StandardCharsets.UTF_8))
+                : new BufferedInputScanner(new ByteArrayInputStream(script));
+        try (CountingOutputStream file = new CountingOutputStream(new FileOutputStream(outputFile))) {
+            final PrintStream output = pipelined
+                    ? new PrintStream(new BufferedOutputStream(file, PIPELINE_BUFFER_SIZE), false)
+                    : new PrintStream(new BufferedOutputStream(file, 128), true);  // As System.out is set up
+            final ATM atm = new ATM(bankMapping, accountMapping, input, output);
+            atm.setPipelined(pipelined);
+            atm.start();
+            return file.writes;
+        }
+    }
+
+    /**
+     * Builds a script that inserts the card and sends the given number of commands, then exits.
+     */
+    private static byte[] buildScript(final int commands) {
+        final StringBuilder script = new StringBuilder(commands * 12);
+        script.append(CARD_NUMBER).append('\n');
+        for (int i = 0; i < commands - 1; i++) {
+            switch (i & 3) {
+                case 0 -> script.append("display\n");
+                case 1 -> script.append("deposit\n5.00\n");
+                case 2 -> script.append("Withdraw\n5.00\n");
+                default -> script.append("DISPLAY\n");
+            }
+        }
+        script.append("exit\n");
+        return script.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * CountingOutputStream counts the writes that reach the underlying stream.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long writes;
+
+        CountingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            writes++;
+            out.write(b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            writes++;
+            out.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The ReadScalingBenchmark class measures how balance queries scale with the number of
+ * threads when they share an AccountMapping with writers. Every thread runs the same mix for
+ * a fixed time: by default 95% getAccountBalance and 5% changeAccountAmount on random
+ * accounts. It reports total and per-thread read throughput for each thread count.
+ *
+ * Usage:
+ *   java ReadScalingBenchmark [seconds] [writePercent] [accounts] [threadCounts...]
+ *   (thread counts default to 1 2 4 8 16 32 64)
+ */
+public class ReadScalingBenchmark {
+    private static final int BANK_ID = 12;
+
+    public static void main(String[] args) throws Exception {
+        final int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        final int writePercent = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        final int numAccounts = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+        final int[] threadCounts = args.length > 3
+                ? Arrays.stream(args, 3, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[] {1, 2, 4, 8, 16, 32, 64};
+
+        final long[] accountKeys = new long[numAccounts];
+        final long[] balances = new long[numAccounts];
+        for (int i = 0; i < numAccounts; i++) {
+            accountKeys[i] = AccountMapping.key(BANK_ID, i);
+            balances[i] = 1_000_000;
+        }
+        final AccountMapping mapping = new AccountMapping(accountKeys, balances);
+
+        run(mapping, 2, seconds, writePercent, numAccounts);  // Warm up the JIT
+        for (int threads : threadCounts) {
+            run(mapping, threads, seconds, writePercent, numAccounts);
+        }
+    }
+
+    private static void run(final AccountMapping mapping, final int threads, final int seconds,
+                            final int writePercent, final int numAccounts) throws InterruptedException {
+        final LongAdder reads = new LongAdder();
+        final LongAdder writes = new LongAdder();
+        final CountDownLatch start = new CountDownLatch(1);
+        final long[] deadline = new long[1];
+        final Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                long localReads = 0;
+                long localWrites = 0;
+                long sink = 0;
+                try {
+                    start.await();
+                    final long end = deadline[0];
+                    while (System.nanoTime() < end) {
+                        for (int i = 0; i < 1024; i++) {  // Check the clock once per batch of requests
+                            final int accountId = random.nextInt(numAccounts);
+                            if (random.nextInt(100) < writePercent) {
+                                mapping.tryChangeAccountAmount(BANK_ID, accountId, (i & 1) == 0 ? 1 : -1);
+                                localWrites++;
+                            } else {
+                                sink += mapping.tryGetAccountBalance(BANK_ID, accountId);
+                                localReads++;
+                            }
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                reads.add(localReads);
+                writes.add(localWrites + (sink == 42 ? 1 : 0));  // Keep the reads from being optimised away
+            });
+            workers[t].start();
+        }
+        deadline[0] = System.nanoTime() + seconds * 1_000_000_000L;
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        final double readsPerSecond = reads.sum() / (double) seconds;
+        System.out.printf("threads=%2d reads: %,14.0f /s (%,12.0f /s per thread) writes: %,12.0f /s%n",
+                threads, readsPerSecond, readsPerSecond / threads, writes.sum() / (double) seconds);
+    }
+}
@@ -0,0 +1,149 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The ReloadLatencyBenchmark class measures whether hot reloads disturb running sessions.
+ * Session threads repeat the work of a card session on random accounts, a display followed
+ * by a withdrawal, holding the slot and bank name as ATM does. Their latencies are recorded
+ * before, during and after a Reloader applies one delta that adds a million accounts at a
+ * new bank and renames the sessions' bank every thousand accounts. The display and withdraw
+ * p99 should stay flat while the account table grows and rehashes underneath them.
+ *
+ * Usage:
+ *   java ReloadLatencyBenchmark [reloadAccounts] [sessions] [seconds] [accounts]
+ */
+public class ReloadLatencyBenchmark {
+    private static final int BANK_ID = 12;
+    private static final int NEW_BANK_ID = 56;
+    private static final int RENAME_EVERY = 1000;
+
+    private static final int BEFORE = 0;
+    private static final int DURING = 1;
+    private static final int AFTER = 2;
+    private static final String[] PHASES = {"before", "during", "after"};
+
+    public static void main(String[] args) throws Exception {
+        final int reloadAccounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        final int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        final int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        final int numAccounts = args.length > 3 ? Integer.parseInt(args[3]) : 100_000;
+
+        final long[] accountKeys = new long[numAccounts];
+        final long[] balances = new long[numAccounts];
+        for (int i = 0; i < numAccounts; i++) {
+            accountKeys[i] = AccountMapping.key(BANK_ID, i);
+            balances[i] = Long.MAX_VALUE / 2;  // Never runs out of funds
+        }
+        final BankMapping bankMapping = new BankMapping(new int[] {BANK_ID}, new String[] {"Chase"});
+        final AccountMapping accountMapping = new AccountMapping(accountKeys, balances);
+        final byte[] delta = buildDelta(reloadAccounts);
+
+        final AtomicInteger phase = new AtomicInteger(BEFORE);
+        final LatencyHistogram[][] displays = new LatencyHistogram[PHASES.length][sessions];
+        final LatencyHistogram[][] withdrawals = new LatencyHistogram[PHASES.length][sessions];
+        final Thread[] workers = new Thread[sessions];
+        for (int t = 0; t < sessions; t++) {
+            final int session = t;
+            for (int p = 0; p < PHASES.length; p++) {
+                displays[p][session] = new LatencyHistogram();
+                withdrawals[p][session] = new LatencyHistogram();
+            }
+            workers[t] = new Thread(() -> runSession(bankMapping, accountMapping, numAccounts, phase,
+                    displays, withdrawals, session), "session-" + t);
+            workers[t].start();
+        }
+
+        Thread.sleep(seconds * 1000L);
+        phase.set(DURING);
+        final long started = System.nanoTime();
+        final int applied = new Reloader(bankMapping, accountMapping)
+                .apply(new BufferedInputScanner(new ByteArrayInputStream(delta)));
+        final long reloadNanos = System.nanoTime() - started;
+        phase.set(AFTER);
+        Thread.sleep(seconds * 1000L);
+        phase.set(PHASES.length);  // Stop the sessions
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        System.out.printf("reloaded %,d changes in %.0f ms (%.0f ns per change), %,d accounts now%n",
+                applied, reloadNanos / 1e6, reloadNanos / (double) applied, accountMapping.size());
+        System.out.printf("%-8s %-9s %12s %9s %9s %9s %9s%n",
+                "phase", "action", "count", "p50 ns", "p99 ns", "p99.9 ns", "max ns");
+        for (int p = 0; p < PHASES.length; p++) {
+            print(PHASES[p], "display", displays[p]);
+            print(PHASES[p], "withdraw", withdrawals[p]);
+        }
+    }
+
+    /**
+     * Repeats display and withdraw on random accounts, recording each latency in the
+     * histograms of the current phase, until the phase moves past AFTER.
+     */
+    private static void runSession(final BankMapping bankMapping, final AccountMapping accountMapping,
+                                   final int numAccounts, final AtomicInteger phase,
+                                   final LatencyHistogram[][] displays, final LatencyHistogram[][] withdrawals,
+                                   final int session) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        long sink = 0;
+        try {
+            int current;
+            while ((current = phase.get()) < PHASES.length) {
+                final int accountId = random.nextInt(numAccounts);
+                int bankVersion = bankMapping.getVersion();
+                String bankName = bankMapping.getBankName(BANK_ID);
+                final int slot = accountMapping.getSlot(BANK_ID, accountId);
+
+                long started = System.nanoTime();
+                if (bankMapping.getVersion() != bankVersion) {
+                    bankVersion = bankMapping.getVersion();  // Renamed since the card was inserted
+                    bankName = bankMapping.getBankName(BANK_ID);
+                }
+                sink += bankName.length() + accountMapping.getAccountBalanceAt(slot, BANK_ID, accountId);
+                displays[current][session].record(System.nanoTime() - started);
+
+                started = System.nanoTime();
+                accountMapping.changeAccountAmountAt(slot, BANK_ID, accountId, -1);
+                withdrawals[current][session].record(System.nanoTime() - started);
+            }
+        } catch (NoSuchException e) {
+            throw new IllegalStateException(e);
+        }
+        if (sink == 42) {
+            System.out.println();  // Keep the reads from being optimised away
+        }
+    }
+
+    /**
+     * Builds a delta that adds a bank and reloadAccounts accounts at it, renaming the
+     * sessions' bank every RENAME_EVERY accounts.
+     */
+    private static byte[] buildDelta(final int reloadAccounts) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(reloadAccounts * 24);
+        final PrintStream out = new PrintStream(bytes, false, StandardCharsets.UTF_8);
+        final int renames = reloadAccounts / RENAME_EVERY;
+        out.print((1 + reloadAccounts + renames) + "\n");
+        out.print("add-bank\n" + NEW_BANK_ID + "\nWells Fargo\n");
+        for (int i = 0; i < reloadAccounts; i++) {
+            out.print("add-account\n" + NEW_BANK_ID + "\n" + i + "\n100.00\n");
+            if ((i + 1) % RENAME_EVERY == 0) {
+                out.print("rename-bank\n" + BANK_ID + "\nChase " + (i + 1) / RENAME_EVERY + "\n");
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void print(final String phase, final String action, final LatencyHistogram[] perSession) {
+        final LatencyHistogram total = new LatencyHistogram();
+        for (LatencyHistogram histogram : perSession) {
+            total.add(histogram);
+        }
+        System.out.printf("%-8s %-9s %,12d %9d %9d %9d %9d%n", phase, action, total.getCount(),
+                total.getPercentile(50), total.getPercentile(99), total.getPercentile(99.9), total.getMax());
+    }
+}
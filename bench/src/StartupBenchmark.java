@@ -0,0 +1,74 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Scanner;
+
+/**
+ * The StartupBenchmark class compares how long it takes to build BankMapping and
+ * AccountMapping from the text input format and from a binary Snapshot of the same data.
+ *
+ * For each size it writes a text input file the way Main expects it, converts it with the
+ * same code path as the Snapshot converter, and then times loading each one.
+ *
+ * Usage:
+ *   java StartupBenchmark [sizes...]
+ *   (defaults to 1000000 10000000)
+ */
+public class StartupBenchmark {
+    public static void main(String[] args) throws IOException {
+        final int[] sizes = args.length == 0
+                ? new int[] {1_000_000, 10_000_000}
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        final Path dir = Files.createTempDirectory("startup");
+        for (int size : sizes) {
+            run(dir, size);
+        }
+    }
+
+    private static void run(final Path dir, final int numAccounts) throws IOException {
+        final Path text = dir.resolve("input-" + numAccounts + ".txt");
+        final Path snapshot = dir.resolve("input-" + numAccounts + ".snapshot");
+        final int numBanks = CreditCard.BANK_ID_LIMIT;
+        final int[] bankIds = new int[numBanks];
+        final String[] bankNames = new String[numBanks];
+        final long[] accountKeys = new long[numAccounts];
+        final long[] balances = new long[numAccounts];
+        try (BufferedWriter out = Files.newBufferedWriter(text)) {
+            out.write(numBanks + "\n");
+            for (int i = 0; i < numBanks; i++) {
+                bankIds[i] = i;
+                bankNames[i] = "Bank " + i;
+                out.write(bankIds[i] + "\n" + bankNames[i] + "\n");
+            }
+            out.write(numAccounts + "\n");
+            for (int i = 0; i < numAccounts; i++) {
+                final int bankId = i % numBanks;
+                final int accountId = numAccounts - i;
+                accountKeys[i] = AccountMapping.key(bankId, accountId);
+                balances[i] = i % 100_000;
+                out.write(bankId + "\n" + accountId + "\n" + Money.format(balances[i]) + "\n");
+            }
+        }
+        Snapshot.write(snapshot, bankIds, bankNames, accountKeys, balances);
+
+        long start = System.nanoTime();
+        try (InputStream in = Files.newInputStream(text)) {
+            final InputScanner input = new InputScanner(new Scanner(in));
+            new BankMapping(input.nextIntLine(), input);
+            new AccountMapping(input.nextIntLine(), input);
+        }
+        final double textMillis = (System.nanoTime() - start) / 1e6;
+
+        start = System.nanoTime();
+        Snapshot.load(snapshot);
+        final double snapshotMillis = (System.nanoTime() - start) / 1e6;
+
+        System.out.printf("accounts=%,d text: %,.0f ms (%,d bytes) snapshot: %,.0f ms (%,d bytes)%n",
+                numAccounts, textMillis, Files.size(text), snapshotMillis, Files.size(snapshot));
+        Files.delete(text);
+        Files.delete(snapshot);
+    }
+}
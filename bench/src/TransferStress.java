@@ -0,0 +1,116 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The TransferStress class drives many threads of random transfers between the accounts of
+ * one shared AccountMapping, including transfers in opposite directions between the same two
+ * accounts, and then checks that the total balance is unchanged and no balance went negative.
+ * Any deadlock shows up as the run never finishing.
+ *
+ * Every transfer is also journaled. The journal is then replayed over the starting balances of
+ * a fresh mapping, which must arrive at exactly the same balances.
+ *
+ * Usage:
+ *   java TransferStress [threads] [accounts] [transfersPerThread]
+ *   (use more than 4096 accounts to also exercise accounts that share a lock stripe)
+ */
+public class TransferStress {
+    private static final int BANK_ID = 12;
+    private static final long START_BALANCE = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        final int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        final int numAccounts = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        final int perThread = args.length > 2 ? Integer.parseInt(args[2]) : 500_000;
+
+        final AccountMapping mapping = createMapping(numAccounts);
+        final Path journalPath = Files.createTempFile("transfers", ".journal");
+        Files.delete(journalPath);
+        final TransactionJournal journal = TransactionJournal.open(journalPath, TransactionJournal.Durability.ASYNC);
+        mapping.attachJournal(journal);
+
+        final LongAdder transferred = new LongAdder();
+        final LongAdder refused = new LongAdder();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                for (int i = 0; i < perThread; i++) {
+                    final int status = mapping.tryTransfer(BANK_ID, random.nextInt(numAccounts),
+                            BANK_ID, random.nextInt(numAccounts), 1 + random.nextInt(200));
+                    if (status == AccountMapping.OK) {
+                        transferred.increment();
+                    } else if (status == AccountMapping.INSUFFICIENT_FUNDS) {
+                        refused.increment();
+                    } else {
+                        throw new IllegalStateException("Unexpected status " + status);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+
+        final long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        final long elapsed = System.nanoTime() - begin;
+        journal.close();
+
+        final long total = checkTotal(mapping, numAccounts);
+        System.out.printf("threads=%d accounts=%,d transfers=%,d (%,d refused) in %.1f ms: %,.0f transfers/s, total=%d%n",
+                threads, numAccounts, (long) threads * perThread, refused.sum(), elapsed / 1e6,
+                threads * perThread / (elapsed / 1e9), total);
+
+        final AccountMapping recovered = createMapping(numAccounts);
+        try (TransactionJournal replayed = TransactionJournal.open(journalPath, TransactionJournal.Durability.ASYNC)) {
+            replayed.replay(recovered);
+        }
+        Files.delete(journalPath);
+        for (int accountId = 0; accountId < numAccounts; accountId++) {
+            if (recovered.getAccountBalance(BANK_ID, accountId) != mapping.getAccountBalance(BANK_ID, accountId)) {
+                throw new IllegalStateException("Journal replay differs for account " + accountId);
+            }
+        }
+        System.out.println("journal replay matches");
+    }
+
+    /**
+     * @return the sum of all balances, after checking that it equals the starting total and
+     *         that no balance is negative.
+     */
+    private static long checkTotal(final AccountMapping mapping, final int numAccounts) throws NoSuchException {
+        long total = 0;
+        for (int accountId = 0; accountId < numAccounts; accountId++) {
+            final long balance = mapping.getAccountBalance(BANK_ID, accountId);
+            if (balance < 0) {
+                throw new IllegalStateException("Account " + accountId + " went negative: " + balance);
+            }
+            total += balance;
+        }
+        if (total != numAccounts * START_BALANCE) {
+            throw new IllegalStateException("Total changed from " + numAccounts * START_BALANCE + " to " + total);
+        }
+        return total;
+    }
+
+    private static AccountMapping createMapping(final int numAccounts) {
+        final long[] accountKeys = new long[numAccounts];
+        final long[] balances = new long[numAccounts];
+        for (int i = 0; i < numAccounts; i++) {
+            accountKeys[i] = AccountMapping.key(BANK_ID, i);
+            balances[i] = START_BALANCE;
+        }
+        return new AccountMapping(accountKeys, balances);
+    }
+}
@@ -0,0 +1,119 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The WithdrawalLimitsBenchmark class measures what WithdrawalLimits add to the withdraw
+ * path under concurrent load. Several threads make small withdrawals from random accounts,
+ * once with no limits attached and once with a daily limit and a velocity rule that never
+ * trigger, and the time per withdrawal is reported for both.
+ *
+ * It then checks the limits under contention: every thread withdraws from the same account
+ * until refused, and the total withdrawn must come to exactly the daily limit.
+ *
+ * Usage:
+ *   java WithdrawalLimitsBenchmark [threads] [withdrawalsPerThread] [accounts] [rounds]
+ */
+public class WithdrawalLimitsBenchmark {
+    private static final int BANK_ID = 12;
+    private static final long HOT_DAILY_LIMIT = 100_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        final int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        final int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        final int numAccounts = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+        final int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        for (int round = 0; round < rounds; round++) {
+            final AccountMapping plain = createMapping(numAccounts);
+            final AccountMapping limited = createMapping(numAccounts);
+            limited.attachLimits(new WithdrawalLimits(limited.size(), Long.MAX_VALUE / 2, 5, 0));
+
+            final double plainNanos = run(plain, threads, perThread, numAccounts);
+            final double limitedNanos = run(limited, threads, perThread, numAccounts);
+            System.out.printf("threads=%d accounts=%,d none: %.1f ns/withdrawal limits: %.1f ns/withdrawal (+%.1f ns)%n",
+                    threads, numAccounts, plainNanos, limitedNanos, limitedNanos - plainNanos);
+        }
+
+        final AccountMapping hot = createMapping(1);
+        hot.attachLimits(new WithdrawalLimits(hot.size(), HOT_DAILY_LIMIT, 0, 0));
+        final long withdrawn = drain(hot, threads);
+        if (withdrawn != HOT_DAILY_LIMIT) {
+            throw new IllegalStateException("Withdrew " + withdrawn + " against a daily limit of " + HOT_DAILY_LIMIT);
+        }
+        System.out.printf("contended: %d threads withdrew exactly the daily limit of %s%n",
+                threads, Money.format(HOT_DAILY_LIMIT));
+    }
+
+    /**
+     * @return the mean wall-clock time per withdrawal, in nanoseconds.
+     */
+    private static double run(final AccountMapping mapping, final int threads, final int perThread,
+                              final int numAccounts) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                awaitQuietly(start);
+                for (int i = 0; i < perThread; i++) {
+                    final int status = mapping.tryChangeAccountAmount(BANK_ID, random.nextInt(numAccounts), -1);
+                    if (status != AccountMapping.OK) {
+                        throw new IllegalStateException("Withdrawal refused with status " + status);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        final long started = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return (System.nanoTime() - started) / ((double) threads * perThread);
+    }
+
+    /**
+     * Withdraws one minor unit at a time from the only account on every thread until the
+     * limit refuses each of them.
+     *
+     * @return the total withdrawn, in minor units.
+     */
+    private static long drain(final AccountMapping mapping, final int threads) throws InterruptedException {
+        final LongAdder withdrawn = new LongAdder();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                awaitQuietly(start);
+                while (mapping.tryChangeAccountAmount(BANK_ID, 0, -1) == AccountMapping.OK) {
+                    withdrawn.increment();
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return withdrawn.sum();
+    }
+
+    private static void awaitQuietly(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static AccountMapping createMapping(final int numAccounts) {
+        final long[] accountKeys = new long[numAccounts];
+        final long[] balances = new long[numAccounts];
+        for (int i = 0; i < numAccounts; i++) {
+            accountKeys[i] = AccountMapping.key(BANK_ID, i);
+            balances[i] = Long.MAX_VALUE / 2;
+        }
+        return new AccountMapping(accountKeys, balances);
+    }
+}
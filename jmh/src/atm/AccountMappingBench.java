@@ -0,0 +1,66 @@
+package atm;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures AccountMapping.getAccountBalance and changeAccountAmount at several data sizes,
+ * probing accounts in a random order so that large mappings pay for their cache misses.
+ * The deposit benchmark alternates between depositing and withdrawing one minor unit so
+ * that balances stay bounded however long it runs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountMappingBench {
+    private static final int PROBES = 1 << 16;
+
+    @Param({"1000", "100000", "1000000"})
+    public int numAccounts;
+
+    private AccountMapping accountMapping;
+    private final int[] probeBankIds = new int[PROBES];
+    private final int[] probeAccountIds = new int[PROBES];
+    private int next;
+    private long amount = 1;
+
+    @Setup
+    public void setup() {
+        final long[] accountKeys = Fixtures.accountKeys(numAccounts);
+        accountMapping = Fixtures.accounts(accountKeys);
+        final Random random = new Random(11);
+        for (int i = 0; i < PROBES; i++) {
+            final long key = accountKeys[random.nextInt(numAccounts)];
+            probeBankIds[i] = AccountMapping.bankId(key);
+            probeAccountIds[i] = AccountMapping.accountId(key);
+        }
+    }
+
+    @Benchmark
+    public long getAccountBalance() throws NoSuchException {
+        final int i = next++ & (PROBES - 1);
+        return accountMapping.getAccountBalance(probeBankIds[i], probeAccountIds[i]);
+    }
+
+    @Benchmark
+    public void changeAccountAmount() throws NoSuchException {
+        final int i = next++ & (PROBES - 1);
+        accountMapping.changeAccountAmount(probeBankIds[i], probeAccountIds[i], amount);
+        amount = -amount;
+    }
+}
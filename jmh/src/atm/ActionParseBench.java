@@ -0,0 +1,35 @@
+package atm;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures ATM.Action.parse over the words a terminal sends, including mixed case input
+ * and an unknown command.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActionParseBench {
+    private final String[] words = {
+            "deposit", "withdraw", "display", "eject", "Deposit", "WITHDRAW", "exit", "balance"
+    };
+    private int next;
+
+    @Benchmark
+    public ATM.Action parse() {
+        return ATM.Action.parse(words[next++ & (words.length - 1)]);
+    }
+}
@@ -0,0 +1,73 @@
+package atm;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a full scripted ATM session from card insertion to exit, read through either
+ * InputScanner implementation. The script inserts CARDS cards and performs a display, a
+ * deposit and a withdrawal on each, so one operation is 3 * CARDS transactions. Output is
+ * discarded so that only the ATM itself is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AtmSessionBench {
+    private static final int ACCOUNTS = 10_000;
+    private static final int CARDS = 100;
+
+    @Param({"scanner", "buffered"})
+    public String reader;
+
+    private BankMapping bankMapping;
+    private AccountMapping accountMapping;
+    private byte[] script;
+    private final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+
+    @Setup
+    public void setup() {
+        final long[] accountKeys = Fixtures.accountKeys(ACCOUNTS);
+        bankMapping = Fixtures.banks();
+        accountMapping = Fixtures.accounts(accountKeys);
+
+        final Random random = new Random(5);
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < CARDS; i++) {
+            final long key = accountKeys[random.nextInt(ACCOUNTS)];
+            text.append(Fixtures.cardNumber(AccountMapping.bankId(key), AccountMapping.accountId(key))).append('\n')
+                    .append("display\n")
+                    .append("deposit\n").append("12.50\n")
+                    .append("withdraw\n").append("12.50\n")
+                    .append(i == CARDS - 1 ? "exit\n" : "eject\n");
+        }
+        script = text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void run() {
+        final InputScanner input = reader.equals("buffered")
+                ? new BufferedInputScanner(new ByteArrayInputStream(script))
+                : new InputScanner(new Scanner(new ByteArrayInputStream(script)));
+        new ATM(bankMapping, accountMapping, input, discard).start();
+    }
+}
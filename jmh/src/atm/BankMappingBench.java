@@ -0,0 +1,41 @@
+package atm;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures BankMapping.getBankName over every bank in turn, so that lookups for the first
+ * and the last bank are both represented.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BankMappingBench {
+    private BankMapping bankMapping;
+    private int next;
+
+    @Setup
+    public void setup() {
+        bankMapping = Fixtures.banks();
+    }
+
+    @Benchmark
+    public String getBankName() throws NoSuchException {
+        final int bankId = Fixtures.FIRST_BANK_ID + next;
+        next = next + 1 == Fixtures.BANKS ? 0 : next + 1;
+        return bankMapping.getBankName(bankId);
+    }
+}
@@ -0,0 +1,56 @@
+package atm;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures card number validation: the CreditCard constructor on valid cards, and the
+ * allocation-free CreditCard.decode Luhn check on a mix where one card in eight has a
+ * wrong check digit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CreditCardBench {
+    private static final int CARDS = 1024;
+
+    private final int[] validCards = new int[CARDS];
+    private final int[] mixedCards = new int[CARDS];
+    private int next;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(7);
+        for (int i = 0; i < CARDS; i++) {
+            validCards[i] = Fixtures.cardNumber(Fixtures.FIRST_BANK_ID + random.nextInt(Fixtures.BANKS),
+                    random.nextInt(100_000));
+            mixedCards[i] = i % 8 == 0 ? validCards[i] ^ 1 : validCards[i];  // Flipping the last bit breaks the check digit
+        }
+    }
+
+    @Benchmark
+    public int construct() {
+        final CreditCard card = new CreditCard(validCards[next++ & (CARDS - 1)]);
+        return card.getBankId() + card.getAccountId();
+    }
+
+    @Benchmark
+    public long decode() {
+        final long decoded = CreditCard.decode(mixedCards[next++ & (CARDS - 1)]);
+        return CreditCard.isValid(decoded) ? CreditCard.accountId(decoded) : decoded;
+    }
+}
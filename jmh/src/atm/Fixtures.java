@@ -0,0 +1,77 @@
+package atm;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Fixtures builds the bank, account and card data shared by the benchmarks. Every data set is
+ * generated from a fixed seed so that results are comparable between runs and releases.
+ */
+final class Fixtures {
+    static final int BANKS = 16;
+    static final int FIRST_BANK_ID = 10;
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return a mapping of BANKS banks with IDs starting at FIRST_BANK_ID.
+     */
+    static BankMapping banks() {
+        final int[] bankIds = new int[BANKS];
+        final String[] bankNames = new String[BANKS];
+        for (int i = 0; i < BANKS; i++) {
+            bankIds[i] = FIRST_BANK_ID + i;
+            bankNames[i] = "Bank " + bankIds[i];
+        }
+        return new BankMapping(bankIds, bankNames);
+    }
+
+    /**
+     * Builds account keys spread evenly over the banks, each with a balance of 1000.00.
+     *
+     * @param numAccounts the number of accounts.
+     * @return the account keys, in a shuffled order.
+     */
+    static long[] accountKeys(final int numAccounts) {
+        final long[] keys = new long[numAccounts];
+        for (int i = 0; i < numAccounts; i++) {
+            keys[i] = AccountMapping.key(FIRST_BANK_ID + i % BANKS, i / BANKS);
+        }
+        final Random random = new Random(42);
+        for (int i = numAccounts - 1; i > 0; i--) {
+            final int j = random.nextInt(i + 1);
+            final long tmp = keys[i];
+            keys[i] = keys[j];
+            keys[j] = tmp;
+        }
+        return keys;
+    }
+
+    /**
+     * @param accountKeys the account keys.
+     * @return a mapping over the given keys where every account holds 1000.00.
+     */
+    static AccountMapping accounts(final long[] accountKeys) {
+        final long[] balances = new long[accountKeys.length];
+        Arrays.fill(balances, 1000 * Money.MINOR_PER_UNIT);
+        return new AccountMapping(accountKeys, balances);
+    }
+
+    /**
+     * Builds the card number for an account by appending the Luhn check digit.
+     *
+     * @param bankId the bank identifier.
+     * @param accountId the account identifier.
+     * @return a valid card number for the account.
+     */
+    static int cardNumber(final int bankId, final int accountId) {
+        final int withoutCheckDigit = (bankId * 100_000 + accountId) * 10;
+        for (int digit = 0; digit < 10; digit++) {
+            if (CreditCard.isValid(CreditCard.decode(withoutCheckDigit + digit))) {
+                return withoutCheckDigit + digit;
+            }
+        }
+        throw new IllegalArgumentException("No check digit for " + bankId + "/" + accountId);
+    }
+}
@@ -1,18 +1,55 @@
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+
 /**
  * The ATM class simulates a basic ATM system, allowing users to deposit, withdraw,
- * and view their account balance. The ATM interacts with both BankMapping to retrieve
+ * transfer to another card's account, and view their account balance and recent transactions. The ATM interacts with both BankMapping to retrieve
  * bank details and AccountMapping to manage account balances.
  *
  * It continuously runs until the user chooses to exit, prompting for actions like
- * deposit, withdraw, display balance, eject card, or exit.
+ * deposit, withdraw, transfer, display balance, history, eject card, or exit.
+ *
+ * Each ATM is one terminal session. Several sessions may share the same BankMapping
+ * and AccountMapping, each with its own input and output streams.
+ *
+ * Prompts can be turned off for sessions that replay recorded input, so that only results
+ * are written. A Listener can be attached to time each card insertion and action.
+ *
+ * The bank name and the account's slot in the AccountMapping are resolved once when a card
+ * is inserted, so the actions that follow do not repeat the lookups. The name is looked up
+ * again only if the BankMapping has changed since, and a slot whose account has been
+ * removed is refused by the AccountMapping.
+ *
+ * A pipelined session serves scripted clients that send many commands at once. Commands are
+ * parsed in place from the input buffer, and responses collect in the output stream's buffer
+ * until the input has no complete line left, that is, until the client is waiting for them;
+ * only then is the output flushed, in one write for the whole batch. Give such a session an
+ * InputScanner that can tell when it has a line buffered, such as BufferedInputScanner, and
+ * a PrintStream that does not flush on every line.
+ *
+ * When a TransactionHistory is attached, every successful deposit, withdrawal and transfer is
+ * recorded in it, and the HISTORY action shows the card's most recent transactions.
  */
 public final class ATM {
+    /**
+     * Number of transactions the HISTORY action shows.
+     */
+    private static final int STATEMENT_LENGTH = 10;
+
     private final BankMapping bankMapping;
     private final AccountMapping accountMapping;
     private final InputScanner input;
+    private final PrintStream output;
+    private final boolean prompts;
+    private boolean pipelined;
+    private Listener listener;
+    private TransactionHistory history;
+    private TransactionHistory.Records statement;
 
     /**
      * Constructor for the ATM class. Initializes the BankMapping, AccountMapping, and InputScanner objects.
+     * Output is written to System.out.
      *
      * @param bankMapping the BankMapping instance to retrieve bank details.
      * @param accountMapping the AccountMapping instance to manage account balances.
@@ -21,35 +58,198 @@ public final class ATM {
     public ATM(final BankMapping bankMapping,
                final AccountMapping accountMapping,
                final InputScanner input) {
+        this(bankMapping, accountMapping, input, System.out);
+    }
+
+    /**
+     * Constructor for the ATM class that writes its prompts and results to the given stream,
+     * for sessions that are not attached to the console.
+     *
+     * @param bankMapping the BankMapping instance to retrieve bank details.
+     * @param accountMapping the AccountMapping instance to manage account balances.
+     * @param input the InputScanner to capture user input.
+     * @param output the PrintStream that prompts and results are written to.
+     */
+    public ATM(final BankMapping bankMapping,
+               final AccountMapping accountMapping,
+               final InputScanner input,
+               final PrintStream output) {
+        this(bankMapping, accountMapping, input, output, true);
+    }
+
+    /**
+     * Constructor for the ATM class that can leave out the prompts, for sessions whose input
+     * is not typed by a person.
+     *
+     * @param bankMapping the BankMapping instance to retrieve bank details.
+     * @param accountMapping the AccountMapping instance to manage account balances.
+     * @param input the InputScanner to capture user input.
+     * @param output the PrintStream that results, and prompts if enabled, are written to.
+     * @param prompts whether to print the prompts asking for a card, an action or an amount.
+     */
+    public ATM(final BankMapping bankMapping,
+               final AccountMapping accountMapping,
+               final InputScanner input,
+               final PrintStream output,
+               final boolean prompts) {
         this.bankMapping = bankMapping;
         this.accountMapping = accountMapping;
         this.input = input;
+        this.output = output;
+        this.prompts = prompts;
+    }
+
+    /**
+     * The Listener interface is notified as a session completes each step, with the time
+     * the step took. Timing starts once the card number or action has been read, so it
+     * excludes waiting for that input but includes reading the amount of a deposit or
+     * withdrawal. Steps that end in an exception are not reported.
+     *
+     * A Listener shared between sessions is called from each session's thread.
+     */
+    public interface Listener {
+        /**
+         * Called after a card has been validated and its balance displayed.
+         *
+         * @param nanos the time taken, in nanoseconds.
+         */
+        void cardInserted(long nanos);
+
+        /**
+         * Called after an action has been carried out.
+         *
+         * @param action the action, or ERROR if the input was not recognized.
+         * @param nanos the time taken, in nanoseconds.
+         */
+        void actionCompleted(Action action, long nanos);
+
+        /**
+         * Called when a card or a request is rejected. By default this does nothing.
+         *
+         * @param failure the reason it was rejected.
+         */
+        default void failed(Failure failure) {
+        }
+    }
+
+    /**
+     * The Failure enum lists the reasons a session reports to its Listener when a card or
+     * a request is rejected.
+     */
+    public enum Failure {
+        /**
+         * The card number was malformed or failed its checks.
+         */
+        INVALID_CARD,
+
+        /**
+         * The card's bank is not known.
+         */
+        NO_SUCH_BANK,
+
+        /**
+         * The card's bank has no such account.
+         */
+        NO_SUCH_ACCOUNT,
+
+        /**
+         * A withdrawal was larger than the balance.
+         */
+        INSUFFICIENT_FUNDS,
+
+        /**
+         * An amount was malformed, zero or negative.
+         */
+        INVALID_AMOUNT,
+
+        /**
+         * A deposit would have overflowed the balance.
+         */
+        OVERFLOW,
+
+        /**
+         * A withdrawal was refused by the daily limit or the velocity rule.
+         */
+        LIMIT_EXCEEDED,
+
+        /**
+         * A change could not be written to the transaction journal.
+         */
+        JOURNAL_FAILED
+    }
+
+    /**
+     * Attaches a listener that is told how long each step of the session takes. Call this
+     * before start.
+     *
+     * @param listener the listener to notify.
+     */
+    public void attachListener(final Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Attaches a transaction history that successful changes are recorded in and that the
+     * HISTORY action reads from. Call this before start.
+     *
+     * @param history the history, which may be shared with other sessions.
+     */
+    public void attachHistory(final TransactionHistory history) {
+        this.history = history;
+        this.statement = new TransactionHistory.Records(STATEMENT_LENGTH);
     }
 
     /**
      * The Action enum defines the available actions a user can perform at the ATM,
-     * including DEPOSIT, WITHDRAW, DISPLAY, EJECT, EXIT, and ERROR for invalid input.
+     * including DEPOSIT, WITHDRAW, TRANSFER, DISPLAY, HISTORY, EJECT, EXIT, and ERROR for invalid input.
      */
     public enum Action {
-        DEPOSIT, WITHDRAW, DISPLAY, EJECT, EXIT, ERROR;
+        DEPOSIT, WITHDRAW, TRANSFER, DISPLAY, HISTORY, EJECT, EXIT, ERROR;
 
         /**
-         * Parses the user's input into one of the valid actions.
-         * Returns ERROR if the input doesn't match any valid action.
+         * Parses the user's input into one of the valid actions, ignoring the case of ASCII
+         * letters. Returns ERROR if the input doesn't match any valid action. The input is
+         * compared in place, so parsing does not allocate.
          *
-         * @param s the user input string.
+         * @param s the user input.
          * @return the corresponding Action enum value.
          */
-        public static Action parse(final String s) {
-            return switch (s.toLowerCase()) {
-                case "deposit"  -> DEPOSIT;
-                case "withdraw" -> WITHDRAW;
-                case "display"  -> DISPLAY;
-                case "eject"    -> EJECT;
-                case "exit"     -> EXIT;
-                default         -> ERROR;
+        public static Action parse(final CharSequence s) {
+            return switch (s.length()) {  // The length narrows the candidates to at most two
+                case 4 -> matches(s, "exit") ? EXIT : ERROR;
+                case 5 -> matches(s, "eject") ? EJECT : ERROR;
+                case 7 -> matches(s, "deposit") ? DEPOSIT
+                        : matches(s, "display") ? DISPLAY
+                        : matches(s, "history") ? HISTORY : ERROR;
+                case 8 -> matches(s, "withdraw") ? WITHDRAW
+                        : matches(s, "transfer") ? TRANSFER : ERROR;
+                default -> ERROR;
             };
         }
+
+        /**
+         * @param s the user input, of the same length as the name.
+         * @param name an action name in lower case.
+         * @return true if the input is the name in any mix of upper and lower case.
+         */
+        private static boolean matches(final CharSequence s, final String name) {
+            for (int i = 0; i < name.length(); i++) {
+                if ((s.charAt(i) | 0x20) != name.charAt(i)) {  // Setting bit 5 lowers an ASCII capital
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Turns pipelining on or off: when on, output is only flushed when the input has no
+     * complete line buffered, instead of at every prompt. Call this before start.
+     *
+     * @param pipelined whether to pipeline the session.
+     */
+    public void setPipelined(final boolean pipelined) {
+        this.pipelined = pipelined;
     }
 
     /**
@@ -57,98 +257,298 @@ public final class ATM {
      * to continuously accept user inputs until the session ends.
      */
     public void start() {
-        System.out.println("ATM is now on.");
+        output.println("ATM is now on.");
         run();
+        output.flush();  // Whatever a pipelined session still holds
     }
 
     /**
      * This method is the core loop of the ATM system. It prompts the user for their card number,
-     * validates their account, and continuously asks for actions (deposit, withdraw, display, eject, or exit).
+     * validates their account, and continuously asks for actions (deposit, withdraw, transfer, display, history, eject, or exit).
      */
     private void run() {
         boolean running = true;
         while (running) {
+            boolean cardAccepted = false;
             try {
-                System.out.print("Input Card Number: ");
+                prompt("Input Card Number: ");
                 int cardNum = input.nextIntLine();
+                long started = listener == null ? 0 : System.nanoTime();
                 CreditCard cc = new CreditCard(cardNum);
+                cardAccepted = true;
+                final int bankId = cc.getBankId();
                 final int accountId = cc.getAccountId();
-                // Call display to validate bank and account information
-                display(bankMapping.getBankName(cc.getBankId()),
-                        accountMapping.getAccountBalance(accountId));
+                // Resolve the bank name and account slot once for the whole card session
+                int bankVersion = bankMapping.getVersion();
+                String bankName = bankMapping.getBankName(bankId);
+                final int slot = accountMapping.getSlot(bankId, accountId);
+                display(bankName, accountMapping.getAccountBalanceAt(slot, bankId, accountId));
+                if (listener != null) {
+                    listener.cardInserted(System.nanoTime() - started);
+                }
                 boolean inserted = true;
                 while (inserted) {
-                    System.out.println("Enter desired action: deposit, withdraw, display, eject, exit");
-                    String userInput = input.nextLine();
-                    switch (Action.parse(userInput)) {
-                        case DEPOSIT -> deposit(accountId);
-                        case WITHDRAW -> withdraw(accountId);
-                        case DISPLAY -> display(bankMapping.getBankName(cc.getBankId()),
-                                accountMapping.getAccountBalance(accountId));
+                    if (prompts) {
+                        output.println("Enter desired action: deposit, withdraw, transfer, display, history, eject, exit");
+                    }
+                    awaitInput();
+                    final CharSequence userInput = input.nextLineView();  // Only valid until the next read
+                    final Action action = Action.parse(userInput);
+                    if (listener != null) {
+                        started = System.nanoTime();
+                    }
+                    switch (action) {
+                        case DEPOSIT -> deposit(slot, bankId, accountId);
+                        case WITHDRAW -> withdraw(slot, bankId, accountId);
+                        case TRANSFER -> transfer(slot, bankId, accountId);
+                        case DISPLAY -> {
+                            if (bankMapping.getVersion() != bankVersion) {
+                                bankVersion = bankMapping.getVersion();  // A bank was changed during the session
+                                bankName = bankMapping.getBankName(bankId);
+                            }
+                            display(bankName, accountMapping.getAccountBalanceAt(slot, bankId, accountId));
+                        }
+                        case HISTORY -> showHistory(bankId, accountId);
                         case EJECT -> inserted = false;
                         case EXIT -> {
                             inserted = false;
                             running = false;
                         }
-                        case ERROR -> System.out.println("I do not recognize the command: " + userInput + ", please try again.");
+                        case ERROR -> output.println("I do not recognize the command: " + userInput + ", please try again.");
+                    }
+                    if (listener != null) {
+                        listener.actionCompleted(action, System.nanoTime() - started);
                     }
                 }
             }
-            catch (IllegalArgumentException | NoSuchException | AccountMapping.InsufficientFunds e) {
-                System.out.println(e);
+            catch (IllegalArgumentException | ArithmeticException | NoSuchException | AccountMapping.InsufficientFunds e) {
+                output.println(e);
+                if (listener != null) {
+                    listener.failed(failureOf(e, cardAccepted));
+                }
             }
         }
     }
 
     /**
-     * This method facilitates depositing funds into the given account ID.
-     * It prompts the user for the deposit amount, parses it, and then updates the account balance.
+     * Classifies an exception that ended a card session for the Listener.
+     *
+     * @param e the exception.
+     * @param cardAccepted whether the card number had already been accepted, which tells an
+     *                     invalid card apart from an invalid amount.
+     * @return the reason to report.
+     */
+    private static Failure failureOf(final Exception e, final boolean cardAccepted) {
+        if (e instanceof BankMapping.NoSuchBank) {
+            return Failure.NO_SUCH_BANK;
+        } else if (e instanceof AccountMapping.NoSuchAccount) {
+            return Failure.NO_SUCH_ACCOUNT;
+        } else if (e instanceof AccountMapping.InsufficientFunds) {
+            return Failure.INSUFFICIENT_FUNDS;
+        } else if (e instanceof ArithmeticException) {
+            return Failure.OVERFLOW;
+        }
+        return cardAccepted ? Failure.INVALID_AMOUNT : Failure.INVALID_CARD;
+    }
+
+    /**
+     * Reports a rejected request to the Listener, if one is attached.
      *
+     * @param failure the reason the request was rejected.
+     */
+    private void fail(final Failure failure) {
+        if (listener != null) {
+            listener.failed(failure);
+        }
+    }
+
+    /**
+     * This method facilitates depositing funds into the given account.
+     * It prompts the user for the deposit amount, parses it into minor units, and then updates the account balance.
+     *
+     * @param slot the account's slot in the AccountMapping.
+     * @param bankId the ID of the bank holding the account.
      * @param accountId the ID of the account where the deposit is made.
      * @throws NoSuchException if the account does not exist.
      */
-    private void deposit(final int accountId) throws NoSuchException {
-        System.out.print("Enter amount to deposit: ");
-        double amount = input.nextDoubleLine();
+    private void deposit(final int slot, final int bankId, final int accountId) throws NoSuchException {
+        prompt("Enter amount to deposit: ");
+        long amount = input.nextMoneyLine();
         if (amount <= 0) {
-            System.out.println("Invalid deposit amount. Must be greater than zero.");
+            output.println("Invalid deposit amount. Must be greater than zero.");
+            fail(Failure.INVALID_AMOUNT);
         } else {
-            accountMapping.changeAccountAmount(accountId, amount);
-            System.out.println("Successfully deposited: " + amount);
+            try {
+                accountMapping.changeAccountAmountAt(slot, bankId, accountId, amount);
+                if (history != null) {
+                    history.record(AccountMapping.key(bankId, accountId), Action.DEPOSIT, amount);
+                }
+                output.println("Successfully deposited: " + Money.format(amount));
+            } catch (UncheckedIOException e) {
+                journalFailed();
+            }
         }
     }
 
     /**
-     * This method facilitates withdrawing funds from the given account ID.
+     * This method facilitates withdrawing funds from the given account.
      * It prompts the user for the withdrawal amount, parses it, and then attempts to deduct
      * the specified amount from the account balance.
      *
+     * @param slot the account's slot in the AccountMapping.
+     * @param bankId the ID of the bank holding the account.
      * @param accountId the ID of the account from which the withdrawal is made.
      * @throws NoSuchException if the account does not exist.
      * @throws AccountMapping.InsufficientFunds if there are not enough funds in the account.
      */
-    private void withdraw(final int accountId) throws NoSuchException {
-        System.out.print("Enter amount to withdraw: ");
-        double amount = input.nextDoubleLine();
+    private void withdraw(final int slot, final int bankId, final int accountId) throws NoSuchException {
+        prompt("Enter amount to withdraw: ");
+        long amount = input.nextMoneyLine();
         if (amount <= 0) {
-            System.out.println("Invalid withdrawal amount. Must be greater than zero.");
+            output.println("Invalid withdrawal amount. Must be greater than zero.");
+            fail(Failure.INVALID_AMOUNT);
         } else {
             try {
-                accountMapping.changeAccountAmount(accountId, -amount);  // Negative for withdrawal
-                System.out.println("Successfully withdrew: " + amount);
+                accountMapping.changeAccountAmountAt(slot, bankId, accountId, -amount);  // Negative for withdrawal
+                if (history != null) {
+                    history.record(AccountMapping.key(bankId, accountId), Action.WITHDRAW, -amount);
+                }
+                output.println("Successfully withdrew: " + Money.format(amount));
             } catch (AccountMapping.InsufficientFunds e) {
-                System.out.println("Insufficient funds: " + e);
+                output.println("Insufficient funds: " + e);
+                fail(Failure.INSUFFICIENT_FUNDS);
+            } catch (WithdrawalLimits.LimitExceeded e) {
+                output.println("Withdrawal refused: " + e);
+                fail(Failure.LIMIT_EXCEEDED);
+            } catch (UncheckedIOException e) {
+                journalFailed();
             }
         }
     }
 
+    /**
+     * This method facilitates transferring funds from the given account to the account of
+     * another card. It prompts for the destination card number and the amount, and moves the
+     * amount in one atomic step. An invalid or unknown destination, or the card's own account,
+     * is reported without ending the card session.
+     *
+     * @param slot the account's slot in the AccountMapping.
+     * @param bankId the ID of the bank holding the account.
+     * @param accountId the ID of the account from which the transfer is made.
+     * @throws NoSuchException if the account does not exist.
+     */
+    private void transfer(final int slot, final int bankId, final int accountId) throws NoSuchException {
+        prompt("Enter destination card number: ");
+        final int toCardNum;
+        final int toBankId;
+        final int toAccountId;
+        final int toSlot;
+        try {
+            toCardNum = input.nextIntLine();  // A non-numeric card is reported like any invalid card
+            final CreditCard toCard = new CreditCard(toCardNum);
+            toBankId = toCard.getBankId();
+            toAccountId = toCard.getAccountId();
+            toSlot = accountMapping.getSlot(toBankId, toAccountId);
+        } catch (IllegalArgumentException e) {
+            output.println("Invalid destination card: " + e.getMessage());
+            fail(Failure.INVALID_CARD);
+            return;
+        } catch (AccountMapping.NoSuchAccount e) {
+            output.println("Invalid destination card: " + e);
+            fail(Failure.NO_SUCH_ACCOUNT);
+            return;
+        }
+        if (toBankId == bankId && toAccountId == accountId) {
+            output.println("Invalid destination card: cannot transfer to the same account");  // Nothing would move
+            fail(Failure.INVALID_CARD);
+            return;
+        }
+
+        prompt("Enter amount to transfer: ");
+        long amount = input.nextMoneyLine();
+        if (amount <= 0) {
+            output.println("Invalid transfer amount. Must be greater than zero.");
+            fail(Failure.INVALID_AMOUNT);
+        } else {
+            try {
+                accountMapping.transferAt(slot, bankId, accountId, toSlot, toBankId, toAccountId, amount);
+                if (history != null) {
+                    history.recordTransfer(AccountMapping.key(bankId, accountId),
+                            AccountMapping.key(toBankId, toAccountId), amount);
+                }
+                output.println("Successfully transferred: " + Money.format(amount) + " to card " + toCardNum);
+            } catch (AccountMapping.InsufficientFunds e) {
+                output.println("Insufficient funds: " + e);
+                fail(Failure.INSUFFICIENT_FUNDS);
+            } catch (WithdrawalLimits.LimitExceeded e) {
+                output.println("Transfer refused: " + e);
+                fail(Failure.LIMIT_EXCEEDED);
+            } catch (UncheckedIOException e) {
+                journalFailed();
+            }
+        }
+    }
+
+    /**
+     * Tells the user that a change could not be journaled. The session goes on, so that
+     * balances can still be displayed, but every later change is refused the same way.
+     */
+    private void journalFailed() {
+        output.println("Transaction could not be recorded. No changes can be made at this time.");
+        fail(Failure.JOURNAL_FAILED);
+    }
+
+    /**
+     * Shows the most recent transactions of the given account, newest first.
+     *
+     * @param bankId the ID of the bank holding the account.
+     * @param accountId the ID of the account.
+     */
+    private void showHistory(final int bankId, final int accountId) {
+        if (history == null) {
+            output.println("Transaction history is not available.");
+            return;
+        }
+        final int count = history.last(AccountMapping.key(bankId, accountId), STATEMENT_LENGTH, statement);
+        output.println("Last " + count + " transactions:");
+        for (int i = 0; i < count; i++) {
+            output.println(Instant.ofEpochMilli(statement.getTime(i)) + " | " + statement.getAction(i)
+                    + " | " + Money.format(statement.getAmount(i)));
+        }
+    }
+
+    /**
+     * Prints a prompt without a trailing newline and flushes it, so that a remote terminal
+     * sees the prompt before the ATM blocks waiting for its answer. Does nothing if prompts
+     * are turned off.
+     *
+     * @param message the prompt to show.
+     */
+    private void prompt(final String message) {
+        if (prompts) {
+            output.print(message);
+        }
+        awaitInput();
+    }
+
+    /**
+     * Flushes the output before the session reads its next line, if the client may be
+     * waiting for it: always when prompts are shown, or in a pipelined session only when no
+     * complete line is buffered, so that the responses to a batch of commands leave together.
+     */
+    private void awaitInput() {
+        if (pipelined ? !input.hasBufferedLine() : prompts) {
+            output.flush();
+        }
+    }
+
     /**
      * Displays the bank name and the associated account balance.
      *
      * @param bankName the name of the bank.
-     * @param accountBalance the balance of the account.
+     * @param accountBalance the balance of the account in minor units.
      */
-    private void display(final String bankName, final double accountBalance) {
-        System.out.println(bankName + " | Account Balance: " + accountBalance);
+    private void display(final String bankName, final long accountBalance) {
+        output.println(bankName + " | Account Balance: " + Money.format(accountBalance));
     }
 }
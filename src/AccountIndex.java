@@ -0,0 +1,277 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * The AccountIndex class is an open-addressing hash table that maps account keys (a bank ID
+ * and an account ID packed into a long, see AccountMapping.key) to their slot in
+ * AccountMapping's AccountStore. It replaces the linear scan over the accounts with a
+ * constant time lookup, whatever the number of banks.
+ *
+ * Each table stores two primitive arrays:
+ * - keys: the account key held in each bucket.
+ * - slots: the slot of that account, EMPTY if the bucket was never used, or DELETED if its
+ *   account was removed.
+ *
+ * Collisions are resolved with linear probing, and the table is kept at most half full
+ * so that probe sequences stay short. Lookups neither box nor allocate.
+ *
+ * Lookups take no lock and may run while accounts are inserted and removed. Writers are
+ * serialized. A bucket only ever goes from EMPTY to holding a key, and from holding a key to
+ * DELETED, and its slot is published after its key, so a reader never pairs a key with
+ * another account's slot. When the table fills up, a table twice the size is created and
+ * new keys go there at once, while a background thread copies the old entries across a few
+ * thousand buckets at a time; lookups check both tables until the copy is done. No insert
+ * ever waits for the whole table to be rehashed.
+ */
+public final class AccountIndex {
+    /**
+     * Returned by find when the account identifier is not present in the index.
+     */
+    public static final int EMPTY = -1;
+
+    private static final int DELETED = -2;
+
+    /**
+     * Number of buckets the background rehash copies per step, between which writers may run.
+     */
+    private static final int REHASH_STEP = 4096;
+
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final Object writeLock = new Object();
+    private volatile Table current;
+    private volatile Table next;  // Table being rehashed into, or null
+
+    // Guarded by writeLock
+    private int rehashed;  // Buckets of current already copied into next
+    private int live;
+
+    /**
+     * Constructor that builds the index over the given account keys. The index of each key
+     * in the array becomes its slot. If a key appears more than once, the first occurrence
+     * wins, matching the behaviour of the previous linear scan.
+     *
+     * @param accountKeys the account keys to index.
+     */
+    public AccountIndex(final long[] accountKeys) {
+        current = new Table(tableSizeFor(accountKeys.length));
+        for (int i = 0; i < accountKeys.length; i++) {
+            if (current.find(accountKeys[i]) == EMPTY) {
+                current.insert(accountKeys[i], i);  // Keep the first occurrence of a duplicate key
+                live++;
+            }
+        }
+    }
+
+    /**
+     * Looks up the slot of the given account key.
+     *
+     * @param accountKey the account key to look up.
+     * @return the slot of the account in AccountMapping's store, or EMPTY if it is not present.
+     */
+    public int find(final long accountKey) {
+        final Table next = this.next;  // Read before current, see finishRehash
+        if (next != null) {
+            final int slot = next.find(accountKey);
+            if (slot != EMPTY) {
+                return slot;
+            }
+        }
+        return current.find(accountKey);
+    }
+
+    /**
+     * Adds an account key, unless it is already present.
+     *
+     * @param accountKey the account key.
+     * @param slot the slot of the account.
+     * @return true if the key was added, false if it was already present.
+     */
+    public boolean insert(final long accountKey, final int slot) {
+        synchronized (writeLock) {
+            if (find(accountKey) != EMPTY) {
+                return false;
+            }
+            Table target = next != null ? next : current;
+            if (target.isFull()) {
+                if (next != null) {
+                    finishRehash();  // Inserts outran the background copy
+                }
+                startRehash();
+                target = next;
+            }
+            target.insert(accountKey, slot);
+            live++;
+            return true;
+        }
+    }
+
+    /**
+     * Removes an account key.
+     *
+     * @param accountKey the account key.
+     * @return the slot the account had, or EMPTY if it was not present.
+     */
+    public int remove(final long accountKey) {
+        synchronized (writeLock) {
+            final int slot = current.remove(accountKey);
+            final int nextSlot = next != null ? next.remove(accountKey) : EMPTY;
+            if (slot == EMPTY && nextSlot == EMPTY) {
+                return EMPTY;
+            }
+            live--;
+            return slot != EMPTY ? slot : nextSlot;
+        }
+    }
+
+    /**
+     * @return true while a background rehash is in progress.
+     */
+    public boolean isRehashing() {
+        return next != null;
+    }
+
+    /**
+     * Creates the larger table and starts copying into it in the background. Called with
+     * writeLock held and no rehash in progress.
+     */
+    private void startRehash() {
+        final Table target = new Table(tableSizeFor(live * 2));
+        rehashed = 0;
+        next = target;
+        final Thread rehasher = new Thread(() -> rehash(target), "account-index-rehash");
+        rehasher.setDaemon(true);
+        rehasher.start();
+    }
+
+    /**
+     * Copies the current table into the target a step at a time, releasing the write lock
+     * between steps, until it is done or another thread has finished it.
+     */
+    private void rehash(final Table target) {
+        while (true) {
+            synchronized (writeLock) {
+                if (next != target) {
+                    return;
+                }
+                if (copyStep()) {
+                    finishRehash();
+                    return;
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Copies the next REHASH_STEP buckets of the current table. Called with writeLock held.
+     *
+     * @return true once every bucket has been copied.
+     */
+    private boolean copyStep() {
+        final Table from = current;
+        final int end = Math.min(from.slots.length, rehashed + REHASH_STEP);
+        for (int bucket = rehashed; bucket < end; bucket++) {
+            final int slot = from.slots[bucket];
+            if (slot >= 0) {
+                next.insert(from.keys[bucket], slot);  // Removed keys are DELETED in both tables
+            }
+        }
+        rehashed = end;
+        return end == from.slots.length;
+    }
+
+    /**
+     * Copies whatever is left and makes the new table current. current is written before
+     * next is cleared, so a reader that sees no rehash in progress also sees the new table.
+     * Called with writeLock held.
+     */
+    private void finishRehash() {
+        while (!copyStep()) {
+            // Copy the remaining buckets
+        }
+        current = next;
+        next = null;
+    }
+
+    /**
+     * A Table is one open-addressing hash table. Only the index's writer changes it.
+     */
+    private static final class Table {
+        private final long[] keys;
+        private final int[] slots;
+        private final int mask;
+        private int used;  // Buckets holding a key or DELETED
+
+        Table(final int capacity) {
+            keys = new long[capacity];
+            slots = new int[capacity];
+            mask = capacity - 1;
+            Arrays.fill(slots, EMPTY);
+        }
+
+        int find(final long accountKey) {
+            int bucket = hash(accountKey) & mask;
+            while (true) {
+                final int slot = (int) SLOTS.getAcquire(slots, bucket);
+                if (slot == EMPTY) {
+                    return EMPTY;  // End of the probe sequence
+                }
+                if (slot != DELETED && keys[bucket] == accountKey) {
+                    return slot;
+                }
+                bucket = (bucket + 1) & mask;
+            }
+        }
+
+        boolean isFull() {
+            return (used + 1) * 2 > slots.length;
+        }
+
+        void insert(final long accountKey, final int slot) {
+            int bucket = hash(accountKey) & mask;
+            while (slots[bucket] != EMPTY) {
+                bucket = (bucket + 1) & mask;  // DELETED buckets are never reused, see the class comment
+            }
+            keys[bucket] = accountKey;
+            SLOTS.setRelease(slots, bucket, slot);  // Publish the slot after the key
+            used++;
+        }
+
+        int remove(final long accountKey) {
+            int bucket = hash(accountKey) & mask;
+            while (true) {
+                final int slot = slots[bucket];
+                if (slot == EMPTY) {
+                    return EMPTY;
+                }
+                if (slot != DELETED && keys[bucket] == accountKey) {
+                    SLOTS.setRelease(slots, bucket, DELETED);
+                    return slot;
+                }
+                bucket = (bucket + 1) & mask;
+            }
+        }
+    }
+
+    /**
+     * Spreads the bits of the key so that sequential account numbers, and the same account
+     * number at different banks, do not cluster into neighbouring buckets.
+     */
+    private static int hash(final long accountKey) {
+        final long h = accountKey * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Returns the smallest power of two that keeps the table at most half full.
+     */
+    private static int tableSizeFor(final int numAccounts) {
+        if (numAccounts > (1 << 29)) {
+            throw new IllegalArgumentException("Too many accounts to index: " + numAccounts);
+        }
+        final int minimum = Math.max(2, numAccounts * 2);
+        return Integer.highestOneBit(minimum - 1) << 1;
+    }
+}
@@ -1,49 +1,262 @@
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.StampedLock;
+
 /**
- * The AccountMapping class stores and manages the mapping between account identifiers
- * and their respective balances. It provides functionality for retrieving balances,
+ * The AccountMapping class stores and manages the mapping between accounts and their
+ * respective balances. An account is identified by its bank ID together with its account ID,
+ * so different banks may issue the same account number. Both IDs are packed into one long
+ * account key (see key), which is what the hash index is keyed by. Balances are held in minor units (see Money) so that
+ * arithmetic on them is exact. It provides functionality for retrieving balances,
  * modifying account amounts (for deposits or withdrawals), and checking if an account
  * has sufficient funds.
  *
  * It throws custom exceptions in cases where the account ID is not found, or if there
  * are insufficient funds during a withdrawal.
+ *
+ * AccountMapping is safe to share between concurrent ATM sessions. Each account slot is
+ * guarded by one of a fixed set of striped locks, so updates to the same account are
+ * serialized while updates to accounts on different stripes proceed in parallel. The locks
+ * are StampedLocks: balance reads are optimistic and take no lock at all unless a writer
+ * holds the stripe, so reads do not contend with each other however many sessions run.
+ *
+ * Accounts can be added and removed while sessions run. Balances live in a segmented
+ * AccountStore, on or off the heap, that grows without copying, and the AccountIndex grows by rehashing in the
+ * background. A removed account's slot keeps the NO_BALANCE marker and is never handed to
+ * another account, so a session that looked the account up just before it was removed gets
+ * NoSuchAccount rather than another account's balance, without reads having to check the key.
+ *
+ * Large lists of changes, such as end-of-day settlements, can be posted with applyBatch,
+ * which groups them by account and applies the groups in parallel.
+ *
+ * Transfers between two accounts hold both accounts' stripes, taken in a fixed order, so they
+ * are atomic and cannot deadlock against each other.
+ *
+ * WithdrawalLimits can be attached to refuse card withdrawals that break a daily limit or a
+ * velocity rule. They are checked under the same stripe lock as the funds check. Settlements
+ * posted with applyBatch are not card withdrawals and are not subject to them.
  */
 public final class AccountMapping {
-    private final int[] accountIds;
-    private final double[] accountBalances;
+    /**
+     * Upper bound on the number of lock stripes. Accounts beyond this many share stripes.
+     */
+    private static final int MAX_LOCK_STRIPES = 4096;
+
+    /**
+     * Number of batch items above which a batch task splits in two.
+     */
+    private static final int BATCH_TASK_SIZE = 16 * 1024;
+
+    private static final VarHandle STATUS_WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * Status code: the change was applied.
+     */
+    public static final int OK = 0;
+
+    /**
+     * Status code: no account has the requested key; nothing was changed.
+     */
+    public static final int NO_SUCH_ACCOUNT = 1;
+
+    /**
+     * Status code: the change would have taken the balance below zero; nothing was changed.
+     */
+    public static final int INSUFFICIENT_FUNDS = 2;
+
+    /**
+     * Status code: the change would have overflowed the balance; nothing was changed.
+     */
+    public static final int OVERFLOW = 3;
+
+    /**
+     * Status code: the withdrawal would have exceeded the account's daily limit; nothing was
+     * changed. Only returned when WithdrawalLimits are attached, and never by applyBatch.
+     */
+    public static final int DAILY_LIMIT_EXCEEDED = 4;
+
+    /**
+     * Status code: the account has made too many withdrawals too recently; nothing was
+     * changed. Only returned when WithdrawalLimits are attached, and never by applyBatch.
+     */
+    public static final int VELOCITY_LIMIT_EXCEEDED = 5;
+
+    /**
+     * Status code: the attached journal has failed, so the change could not be logged. A
+     * change refused because an earlier write failed was not made. A change whose own write
+     * failed was made in memory but will not survive a restart. Never returned by applyBatch.
+     */
+    public static final int JOURNAL_FAILED = 6;
+
+    /**
+     * Returned by tryGetAccountBalance when the account is not found. No account can hold
+     * this balance, since it cannot be reached by deposits and withdrawals.
+     */
+    public static final long NO_BALANCE = Long.MIN_VALUE;
+
+    /**
+     * Key held by a slot whose account was removed. It is the key of bank ID
+     * Integer.MIN_VALUE, which no bank can have. The slot's balance is set to NO_BALANCE.
+     */
+    private static final long REMOVED = Long.MIN_VALUE;
+
+    private final AccountStore store;
+    private final AccountIndex accountIndex;
+    private final StampedLock[] locks;
+    private final int lockMask;
+    private TransactionJournal journal;
+    private WithdrawalLimits limits;
+
+    // Adding and removing accounts is serialized by writeLock
+    private final Object writeLock = new Object();
+    private volatile int slotCount;
 
     /**
-     * Constructor that reads account identifiers and their corresponding balances
-     * from the InputScanner. The input is read in pairs where the first input
-     * is the account ID and the second input is the balance.
+     * Constructor that reads accounts and their corresponding balances from the InputScanner.
+     * The input is read in triples where the first input is the bank ID, the second input is
+     * the account ID and the third input is the balance.
      *
      * @param numAccounts the number of accounts to read in.
      * @param input the InputScanner used to read the input data.
      */
     public AccountMapping(final int numAccounts, final InputScanner input) {
-        accountIds = new int[numAccounts];
-        accountBalances = new double[numAccounts];
+        this(numAccounts, input, AccountStore.Kind.HEAP);
+    }
+
+    /**
+     * Constructor that reads accounts like AccountMapping(int, InputScanner) into the given
+     * kind of store.
+     *
+     * @param numAccounts the number of accounts to read in.
+     * @param input the InputScanner used to read the input data.
+     * @param storeKind where keys and balances are kept.
+     */
+    public AccountMapping(final int numAccounts, final InputScanner input, final AccountStore.Kind storeKind) {
+        final long[] accountKeys = new long[numAccounts];
+        store = storeKind.create(numAccounts);
         for (int i = 0; i < numAccounts; i++) {
-            accountIds[i] = input.nextIntLine();  // Read account ID
-            accountBalances[i] = input.nextDoubleLine();  // Read account balance
+            final int bankId = input.nextIntLine();  // Read bank ID
+            accountKeys[i] = key(bankId, input.nextIntLine());  // Read account ID
+            store.setKey(i, accountKeys[i]);
+            store.setBalance(i, input.nextMoneyLine());  // Read account balance
+        }
+        accountIndex = new AccountIndex(accountKeys);
+        slotCount = numAccounts;
+        locks = createLocks();
+        lockMask = locks.length - 1;
+    }
+
+    /**
+     * Constructor that takes account keys and their corresponding balances that have already
+     * been loaded. The arrays are copied into the store and must be the same length.
+     *
+     * @param accountKeys the account keys, each built with key.
+     * @param accountBalances the balance of each account in minor units, in the same order as the keys.
+     */
+    public AccountMapping(final long[] accountKeys, final long[] accountBalances) {
+        this(accountKeys, accountBalances, AccountStore.Kind.HEAP);
+    }
+
+    /**
+     * Constructor that takes accounts like AccountMapping(long[], long[]) and copies them
+     * into the given kind of store.
+     *
+     * @param accountKeys the account keys, each built with key.
+     * @param accountBalances the balance of each account in minor units, in the same order as the keys.
+     * @param storeKind where keys and balances are kept.
+     */
+    public AccountMapping(final long[] accountKeys, final long[] accountBalances, final AccountStore.Kind storeKind) {
+        if (accountKeys.length != accountBalances.length) {
+            throw new IllegalArgumentException("Account keys and balances must be the same length");
+        }
+        store = storeKind.create(accountKeys.length);
+        for (int i = 0; i < accountKeys.length; i++) {
+            store.setKey(i, accountKeys[i]);
+            store.setBalance(i, accountBalances[i]);
+        }
+        accountIndex = new AccountIndex(accountKeys);
+        slotCount = accountKeys.length;
+        locks = createLocks();
+        lockMask = locks.length - 1;
+    }
+
+    /**
+     * Packs a bank ID and an account ID into one account key, with the bank ID in the upper
+     * 32 bits. This is the same packing CreditCard.decode returns for a valid card.
+     *
+     * @param bankId the bank identifier.
+     * @param accountId the account identifier within the bank.
+     * @return the account key.
+     */
+    public static long key(final int bankId, final int accountId) {
+        return ((long) bankId << 32) | (accountId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param accountKey an account key built with key.
+     * @return the bank ID of the account key.
+     */
+    public static int bankId(final long accountKey) {
+        return (int) (accountKey >>> 32);
+    }
+
+    /**
+     * @param accountKey an account key built with key.
+     * @return the account ID of the account key.
+     */
+    public static int accountId(final long accountKey) {
+        return (int) accountKey;
+    }
+
+    /**
+     * Creates MAX_LOCK_STRIPES locks; the mapping can grow, so the stripes are not sized to the
+     * initial accounts. Slots are assigned sequentially, so neighbouring accounts always land
+     * on different stripes.
+     *
+     * @return the lock stripes.
+     */
+    private static StampedLock[] createLocks() {
+        final int stripes = MAX_LOCK_STRIPES;
+        final StampedLock[] locks = new StampedLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new StampedLock();
         }
+        return locks;
     }
 
     /**
-     * NoSuchAccount is a custom exception that is thrown when an account identifier
-     * is not found in the accountIds array.
+     * NoSuchAccount is a custom exception that is thrown when a bank has no account
+     * with the requested account identifier.
      */
     public static final class NoSuchAccount extends NoSuchException {
+        private static final long serialVersionUID = 1L;
+
+        private final int bankId;
         private final int accountId;
 
         /**
-         * Constructor that initializes the exception with the account ID that was not found.
+         * Constructor that initializes the exception with the account that was not found.
          *
+         * @param bankId the bank ID of the account that was not found.
          * @param accountId the account ID that was not found.
          */
-        public NoSuchAccount(final int accountId) {
+        public NoSuchAccount(final int bankId, final int accountId) {
+            this.bankId = bankId;
             this.accountId = accountId;
         }
 
+        /**
+         * @return the bank ID of the account that caused the exception.
+         */
+        public int getBankId() {
+            return bankId;
+        }
+
         /**
          * @return the name of the exception ("Account").
          */
@@ -62,76 +275,840 @@ public final class AccountMapping {
     }
 
     /**
-     * Retrieves the account balance associated with a given account ID.
+     * Retrieves the account balance associated with a given bank and account ID.
      *
+     * @param bankId the bank identifier.
      * @param accountId the account identifier.
-     * @return the balance of the account.
-     * @throws NoSuchAccount if the account ID is not found.
+     * @return the balance of the account in minor units.
+     * @throws NoSuchAccount if the account is not found.
      */
-    public double getAccountBalance(final int accountId) throws NoSuchAccount {
-        int index = findAccount(accountId);  // Find the index of the account ID
-        return accountBalances[index];  // Return the corresponding balance
+    public long getAccountBalance(final int bankId, final int accountId) throws NoSuchAccount {
+        int index = findAccount(bankId, accountId);  // Find the index of the account
+        return balanceIn(index, bankId, accountId);  // Return the corresponding balance
+    }
+
+    /**
+     * Looks up the storage slot of an account, so that a session can resolve it once and pass
+     * it to getAccountBalanceAt and changeAccountAmountAt for the rest of the card session.
+     *
+     * @param bankId the bank identifier.
+     * @param accountId the account identifier.
+     * @return the slot of the account.
+     * @throws NoSuchAccount if the account is not found.
+     */
+    public int getSlot(final int bankId, final int accountId) throws NoSuchAccount {
+        return findAccount(bankId, accountId);
+    }
+
+    /**
+     * Retrieves the account balance like getAccountBalance, starting from a slot returned by
+     * getSlot. The slot is only a hint: if it no longer holds the account, the account is
+     * looked up again.
+     *
+     * @param slot the slot returned by getSlot for this account.
+     * @param bankId the bank identifier.
+     * @param accountId the account identifier.
+     * @return the balance of the account in minor units.
+     * @throws NoSuchAccount if the account is not found.
+     */
+    public long getAccountBalanceAt(final int slot, final int bankId, final int accountId) throws NoSuchAccount {
+        return balanceIn(checkSlot(slot, bankId, accountId), bankId, accountId);
+    }
+
+    /**
+     * Reads the balance of the account in the given slot, throwing if it was removed.
+     */
+    private long balanceIn(final int index, final int bankId, final int accountId) throws NoSuchAccount {
+        final long balance = balanceAt(index);
+        if (balance == NO_BALANCE) {
+            throw new NoSuchAccount(bankId, accountId);  // Removed since it was looked up
+        }
+        return balance;
+    }
+
+    /**
+     * Retrieves the account balance like getAccountBalance, but returns NO_BALANCE instead of
+     * throwing when the account is not found.
+     *
+     * @param bankId the bank identifier.
+     * @param accountId the account identifier.
+     * @return the balance of the account in minor units, or NO_BALANCE if it is not found.
+     */
+    public long tryGetAccountBalance(final int bankId, final int accountId) {
+        final int index = accountIndex.find(key(bankId, accountId));
+        return index == AccountIndex.EMPTY ? NO_BALANCE : balanceAt(index);
     }
 
     /**
      * InsufficientFunds is a custom runtime exception thrown when an attempt is made
-     * to withdraw an amount that exceeds the current account balance.
+     * to withdraw an amount that exceeds the current account balance. Like NoSuchException,
+     * it does not capture a stack trace, and its message is only built when it is asked for.
      */
-    public final class InsufficientFunds extends RuntimeException {
-        private final String message;
+    public static final class InsufficientFunds extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int bankId;
+        private final int accountId;
+        private final long amount;
+        private final long balance;
 
         /**
          * Constructor that creates an exception indicating insufficient funds for the withdrawal.
          *
+         * @param bankId the bank ID of the account that has insufficient funds.
          * @param accountId the account ID that has insufficient funds.
-         * @param amount the amount that was attempted to withdraw.
-         * @throws NoSuchAccount if the account does not exist.
+         * @param amount the amount that was attempted to withdraw, as a positive number of minor units.
+         * @param balance the balance of the account when the withdrawal was refused, in minor units.
+         */
+        public InsufficientFunds(final int bankId, final int accountId, final long amount, final long balance) {
+            super(null, null, false, false);
+            this.bankId = bankId;
+            this.accountId = accountId;
+            this.amount = amount;
+            this.balance = balance;
+        }
+
+        /**
+         * @return the bank ID of the account that has insufficient funds.
+         */
+        public int getBankId() {
+            return bankId;
+        }
+
+        /**
+         * @return the account ID that has insufficient funds.
          */
-        public InsufficientFunds(final int accountId, final double amount) throws NoSuchAccount {
-            this.message = "INSUFFICIENT FUNDS: Attempted to withdraw " + amount +
-                    " from account with balance of " + getAccountBalance(accountId);
+        public int getAccountId() {
+            return accountId;
+        }
+
+        /**
+         * @return the amount that was attempted to withdraw, as a positive number of minor units.
+         */
+        public long getAmount() {
+            return amount;
+        }
+
+        /**
+         * @return the balance of the account when the withdrawal was refused, in minor units.
+         */
+        public long getBalance() {
+            return balance;
+        }
+
+        @Override
+        public String getMessage() {
+            return "INSUFFICIENT FUNDS: Attempted to withdraw " + Money.format(amount) +
+                    " from account with balance of " + Money.format(balance);
         }
 
         @Override
         public String toString() {
-            return message;
+            return getMessage();
         }
     }
 
     /**
      * Changes the balance of a given account by a specified amount. If the account does not
      * have sufficient funds for a withdrawal, an InsufficientFunds exception is thrown.
+     * The funds check and the update happen under the account's lock, so concurrent
+     * withdrawals can never take the balance below zero or lose an update. If a journal is
+     * attached, the new balance is logged and this method waits until it is durable.
+     *
+     * @param bankId the bank identifier.
+     * @param accountId the account identifier.
+     * @param amount the amount in minor units to change the balance by (negative for withdrawal, positive for deposit).
+     * @throws NoSuchAccount if the account is not found.
+     * @throws InsufficientFunds if there are insufficient funds for a withdrawal.
+     * @throws WithdrawalLimits.LimitExceeded if attached withdrawal limits refuse the withdrawal.
+     * @throws ArithmeticException if the new balance would overflow.
+     * @throws UncheckedIOException if the attached journal has failed (see JOURNAL_FAILED).
+     */
+    public void changeAccountAmount(final int bankId, final int accountId, final long amount)
+            throws NoSuchAccount, InsufficientFunds {
+        changeAccountAmountIn(findAccount(bankId, accountId), bankId, accountId, amount);
+    }
+
+    /**
+     * Changes the balance of an account like changeAccountAmount, starting from a slot
+     * returned by getSlot. The slot is only a hint: if it no longer holds the account, the
+     * account is looked up again.
      *
+     * @param slot the slot returned by getSlot for this account.
+     * @param bankId the bank identifier.
      * @param accountId the account identifier.
-     * @param amount the amount to change the balance by (negative for withdrawal, positive for deposit).
-     * @throws NoSuchAccount if the account ID is not found.
+     * @param amount the amount in minor units to change the balance by (negative for withdrawal, positive for deposit).
+     * @throws NoSuchAccount if the account is not found.
      * @throws InsufficientFunds if there are insufficient funds for a withdrawal.
+     * @throws WithdrawalLimits.LimitExceeded if attached withdrawal limits refuse the withdrawal.
+     * @throws ArithmeticException if the new balance would overflow.
+     * @throws UncheckedIOException if the attached journal has failed (see JOURNAL_FAILED).
+     */
+    public void changeAccountAmountAt(final int slot, final int bankId, final int accountId, final long amount)
+            throws NoSuchAccount, InsufficientFunds {
+        changeAccountAmountIn(checkSlot(slot, bankId, accountId), bankId, accountId, amount);
+    }
+
+    /**
+     * Applies a change to the account in the given slot, turning a refusal into its exception.
+     */
+    private void changeAccountAmountIn(final int index, final int bankId, final int accountId, final long amount)
+            throws NoSuchAccount {
+        final int status = changeAt(index, amount);
+        switch (status) {
+            case NO_SUCH_ACCOUNT -> throw new NoSuchAccount(bankId, accountId);  // Removed since it was looked up
+            case INSUFFICIENT_FUNDS -> throw new InsufficientFunds(bankId, accountId, -amount, balanceAt(index));  // Only withdrawals are refused
+            case OVERFLOW -> throw new ArithmeticException("long overflow");
+            case DAILY_LIMIT_EXCEEDED, VELOCITY_LIMIT_EXCEEDED -> throw new WithdrawalLimits.LimitExceeded(
+                    bankId, accountId, -amount, limits.describe(status));
+            case JOURNAL_FAILED -> throw journalFailed();
+            default -> { }
+        }
+    }
+
+    /**
+     * Changes the balance of an account like changeAccountAmount, but returns a status code
+     * instead of throwing when the change is refused.
+     *
+     * @param bankId the bank identifier.
+     * @param accountId the account identifier.
+     * @param amount the amount in minor units to change the balance by (negative for withdrawal, positive for deposit).
+     * @return OK, NO_SUCH_ACCOUNT, INSUFFICIENT_FUNDS, OVERFLOW, DAILY_LIMIT_EXCEEDED,
+     *         VELOCITY_LIMIT_EXCEEDED or JOURNAL_FAILED.
+     */
+    public int tryChangeAccountAmount(final int bankId, final int accountId, final long amount) {
+        final int index = accountIndex.find(key(bankId, accountId));
+        return index == AccountIndex.EMPTY ? NO_SUCH_ACCOUNT : changeAt(index, amount);
+    }
+
+    /**
+     * Moves an amount from one account to another as a single atomic step. Both accounts'
+     * locks are held while the funds check and both updates are made, taken in stripe order
+     * so that opposing transfers cannot deadlock, and no reader sees one side changed without
+     * the other. The debit counts as a withdrawal for attached WithdrawalLimits. If a journal
+     * is attached, both new balances are logged as one unit and this method waits until they
+     * are durable. A transfer from an account to itself changes nothing and is not counted
+     * by WithdrawalLimits; like any transfer, it is refused if the amount exceeds the balance.
+     *
+     * @param fromBankId the bank identifier of the account to debit.
+     * @param fromAccountId the account identifier of the account to debit.
+     * @param toBankId the bank identifier of the account to credit.
+     * @param toAccountId the account identifier of the account to credit.
+     * @param amount the amount to move, in minor units; must be positive.
+     * @throws NoSuchAccount if either account is not found.
+     * @throws InsufficientFunds if the debited account has insufficient funds.
+     * @throws WithdrawalLimits.LimitExceeded if attached withdrawal limits refuse the debit.
+     * @throws ArithmeticException if the credited balance would overflow.
+     * @throws UncheckedIOException if the attached journal has failed (see JOURNAL_FAILED).
+     * @throws IllegalArgumentException if the amount is not positive.
+     */
+    public void transfer(final int fromBankId, final int fromAccountId,
+                         final int toBankId, final int toAccountId, final long amount)
+            throws NoSuchAccount, InsufficientFunds {
+        transferIn(findAccount(fromBankId, fromAccountId), fromBankId, fromAccountId,
+                findAccount(toBankId, toAccountId), toBankId, toAccountId, amount);
+    }
+
+    /**
+     * Moves an amount from one account to another like transfer, starting from slots returned
+     * by getSlot. The slots are only hints: if one no longer holds its account, the account
+     * is looked up again.
+     *
+     * @param fromSlot the slot returned by getSlot for the account to debit.
+     * @param fromBankId the bank identifier of the account to debit.
+     * @param fromAccountId the account identifier of the account to debit.
+     * @param toSlot the slot returned by getSlot for the account to credit.
+     * @param toBankId the bank identifier of the account to credit.
+     * @param toAccountId the account identifier of the account to credit.
+     * @param amount the amount to move, in minor units; must be positive.
+     * @throws NoSuchAccount if either account is not found.
+     * @throws InsufficientFunds if the debited account has insufficient funds.
+     * @throws WithdrawalLimits.LimitExceeded if attached withdrawal limits refuse the debit.
+     * @throws ArithmeticException if the credited balance would overflow.
+     * @throws UncheckedIOException if the attached journal has failed (see JOURNAL_FAILED).
+     * @throws IllegalArgumentException if the amount is not positive.
+     */
+    public void transferAt(final int fromSlot, final int fromBankId, final int fromAccountId,
+                           final int toSlot, final int toBankId, final int toAccountId, final long amount)
+            throws NoSuchAccount, InsufficientFunds {
+        transferIn(checkSlot(fromSlot, fromBankId, fromAccountId), fromBankId, fromAccountId,
+                checkSlot(toSlot, toBankId, toAccountId), toBankId, toAccountId, amount);
+    }
+
+    /**
+     * Moves an amount from one account to another like transfer, but returns a status code
+     * instead of throwing when the transfer is refused.
+     *
+     * @param fromBankId the bank identifier of the account to debit.
+     * @param fromAccountId the account identifier of the account to debit.
+     * @param toBankId the bank identifier of the account to credit.
+     * @param toAccountId the account identifier of the account to credit.
+     * @param amount the amount to move, in minor units; must be positive.
+     * @return OK, NO_SUCH_ACCOUNT, INSUFFICIENT_FUNDS, OVERFLOW, DAILY_LIMIT_EXCEEDED,
+     *         VELOCITY_LIMIT_EXCEEDED or JOURNAL_FAILED.
+     * @throws IllegalArgumentException if the amount is not positive.
+     */
+    public int tryTransfer(final int fromBankId, final int fromAccountId,
+                           final int toBankId, final int toAccountId, final long amount) {
+        final int from = accountIndex.find(key(fromBankId, fromAccountId));
+        final int to = accountIndex.find(key(toBankId, toAccountId));
+        if (from == AccountIndex.EMPTY || to == AccountIndex.EMPTY) {
+            return NO_SUCH_ACCOUNT;
+        }
+        return transferBetween(from, to, amount);
+    }
+
+    /**
+     * Applies a transfer between the given slots, turning a refusal into its exception.
+     */
+    private void transferIn(final int from, final int fromBankId, final int fromAccountId,
+                            final int to, final int toBankId, final int toAccountId, final long amount)
+            throws NoSuchAccount {
+        final int status = transferBetween(from, to, amount);
+        switch (status) {
+            case NO_SUCH_ACCOUNT -> throw balanceAt(from) == NO_BALANCE  // Removed since it was looked up
+                    ? new NoSuchAccount(fromBankId, fromAccountId)
+                    : new NoSuchAccount(toBankId, toAccountId);
+            case INSUFFICIENT_FUNDS -> throw new InsufficientFunds(fromBankId, fromAccountId, amount, balanceAt(from));
+            case OVERFLOW -> throw new ArithmeticException("long overflow");
+            case DAILY_LIMIT_EXCEEDED, VELOCITY_LIMIT_EXCEEDED -> throw new WithdrawalLimits.LimitExceeded(
+                    fromBankId, fromAccountId, "transfer", amount, limits.describe(status));
+            case JOURNAL_FAILED -> throw journalFailed();
+            default -> { }
+        }
+    }
+
+    /**
+     * @return the exception for a change refused with JOURNAL_FAILED.
+     */
+    private UncheckedIOException journalFailed() {
+        return new UncheckedIOException("Transaction journal write failed", journal.getFailure());
+    }
+
+    /**
+     * Reads the balance in the given slot. The read is optimistic: it is only repeated under
+     * the stripe's read lock if a writer held or took the stripe while it was being made.
+     *
+     * @param index the slot of the account.
+     * @return the balance of the account in minor units, or NO_BALANCE if it was removed.
+     */
+    private long balanceAt(final int index) {
+        final StampedLock lock = locks[index & lockMask];
+        final long optimistic = lock.tryOptimisticRead();
+        final long balance = store.balance(index);
+        if (lock.validate(optimistic)) {
+            return balance;
+        }
+        final long stamp = lock.readLock();  // Wait for the writer instead of spinning
+        try {
+            return store.balance(index);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Applies a change to the balance in the given slot. The funds check and the update
+     * happen under the account's lock, and if a journal is attached the new balance is logged
+     * and this method waits until it is durable. Once the journal has failed, the change is
+     * refused before anything is changed.
+     *
+     * @param index the slot of the account.
+     * @param amount the amount in minor units to change the balance by.
+     * @return OK, NO_SUCH_ACCOUNT, INSUFFICIENT_FUNDS, OVERFLOW, DAILY_LIMIT_EXCEEDED,
+     *         VELOCITY_LIMIT_EXCEEDED or JOURNAL_FAILED.
+     */
+    private int changeAt(final int index, final long amount) {
+        final TransactionJournal journal = this.journal;
+        final WithdrawalLimits limits = amount < 0 ? this.limits : null;
+        long journalSeq = 0;
+        final StampedLock lock = locks[index & lockMask];
+        final long stamp = lock.writeLock();
+        try {
+            if (journal != null && journal.hasFailed()) {
+                return JOURNAL_FAILED;  // The change could not be logged
+            }
+            final long balance = store.balance(index);
+            if (balance == NO_BALANCE) {
+                return NO_SUCH_ACCOUNT;  // Removed since it was looked up
+            }
+            final long newBalance = balance + amount;  // Calculate new balance
+            if (overflows(balance, amount, newBalance)) {
+                return OVERFLOW;
+            }
+            if (newBalance < 0) {
+                return INSUFFICIENT_FUNDS;  // Refuse if funds are insufficient
+            }
+            if (limits != null) {
+                // Read the clock under the lock so each slot sees its withdrawals in order
+                final int status = limits.tryWithdraw(index, -amount, System.currentTimeMillis());
+                if (status != OK) {
+                    return status;
+                }
+            }
+
+            store.setBalance(index, newBalance);  // Update balance
+            if (journal != null) {
+                journalSeq = journal.append(store.key(index), newBalance);  // Log in the same order as the updates
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        if (journal != null && !journal.tryAwaitDurable(journalSeq)) {  // Wait for the fsync outside the account lock
+            return JOURNAL_FAILED;
+        }
+        return OK;
+    }
+
+    /**
+     * Moves an amount between the given slots. The stripes of both slots are locked in
+     * ascending order, or once if they share a stripe, so any two transfers always take their
+     * locks in the same order and cannot deadlock. If a journal is attached, both new balances
+     * are logged as one unit and this method waits until they are durable. Once the journal
+     * has failed, the transfer is refused before anything is changed.
+     *
+     * @param from the slot of the account to debit.
+     * @param to the slot of the account to credit.
+     * @param amount the amount to move, in minor units.
+     * @return OK, NO_SUCH_ACCOUNT, INSUFFICIENT_FUNDS, OVERFLOW, DAILY_LIMIT_EXCEEDED,
+     *         VELOCITY_LIMIT_EXCEEDED or JOURNAL_FAILED.
+     */
+    private int transferBetween(final int from, final int to, final long amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Transfer amount must be positive");
+        }
+        final TransactionJournal journal = this.journal;
+        final WithdrawalLimits limits = this.limits;
+        long journalSeq = 0;
+        final int fromStripe = from & lockMask;
+        final int toStripe = to & lockMask;
+        final StampedLock first = locks[Math.min(fromStripe, toStripe)];
+        final StampedLock second = fromStripe == toStripe ? null : locks[Math.max(fromStripe, toStripe)];
+        final long firstStamp = first.writeLock();
+        final long secondStamp = second == null ? 0 : second.writeLock();
+        try {
+            if (journal != null && journal.hasFailed()) {
+                return JOURNAL_FAILED;  // The transfer could not be logged
+            }
+            final long fromBalance = store.balance(from);
+            final long toBalance = store.balance(to);
+            if (fromBalance == NO_BALANCE || toBalance == NO_BALANCE) {
+                return NO_SUCH_ACCOUNT;  // Removed since it was looked up
+            }
+            final long newFromBalance = fromBalance - amount;  // Cannot overflow, as amount is positive
+            if (newFromBalance < 0) {
+                return INSUFFICIENT_FUNDS;
+            }
+            if (from == to) {
+                return OK;  // Nothing moves, so nothing counts against the limits
+            }
+            final long newToBalance = toBalance + amount;
+            if (overflows(toBalance, amount, newToBalance)) {
+                return OVERFLOW;
+            }
+            if (limits != null) {
+                final int status = limits.tryWithdraw(from, amount, System.currentTimeMillis());
+                if (status != OK) {
+                    return status;
+                }
+            }
+
+            store.setBalance(from, newFromBalance);
+            store.setBalance(to, newToBalance);
+            if (journal != null) {
+                journalSeq = journal.appendTransfer(store.key(from), newFromBalance, store.key(to), newToBalance);
+            }
+        } finally {
+            if (second != null) {
+                second.unlockWrite(secondStamp);
+            }
+            first.unlockWrite(firstStamp);
+        }
+        if (journal != null && !journal.tryAwaitDurable(journalSeq)) {  // Wait for the fsync outside the account locks
+            return JOURNAL_FAILED;
+        }
+        return OK;
+    }
+
+    /**
+     * @return true if adding amount to balance overflowed to sum; the same check as Math.addExact.
+     */
+    private static boolean overflows(final long balance, final long amount, final long sum) {
+        return ((balance ^ sum) & (amount ^ sum)) < 0;
+    }
+
+    /**
+     * BatchResult holds the outcome of every item of a batch as a 2-bit status code (OK,
+     * NO_SUCH_ACCOUNT, INSUFFICIENT_FUNDS or OVERFLOW), 32 items to a long.
+     */
+    public static final class BatchResult {
+        private static final int ITEMS_PER_WORD = Long.SIZE / 2;
+
+        private final int size;
+        private final long[] statusWords;
+
+        private BatchResult(final int size, final long[] statusWords) {
+            this.size = size;
+            this.statusWords = statusWords;
+        }
+
+        /**
+         * @return the number of items in the batch.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param item the index of the item in the batch.
+         * @return the status code of the item.
+         */
+        public int getStatus(final int item) {
+            Objects.checkIndex(item, size);
+            return (int) (statusWords[item / ITEMS_PER_WORD] >>> (item % ITEMS_PER_WORD * 2)) & 3;
+        }
+
+        /**
+         * @param status a status code.
+         * @return the number of items with the given status.
+         */
+        public int getCount(final int status) {
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (getStatus(i) == status) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * @return true if every item was applied.
+         */
+        public boolean isAllOk() {
+            for (long word : statusWords) {
+                if (word != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Sets the status of an item. Tasks applying different accounts may share a word, so
+         * the bits are set atomically.
+         */
+        private static void setStatus(final long[] statusWords, final int item, final int status) {
+            STATUS_WORDS.getAndBitwiseOr(statusWords, item / ITEMS_PER_WORD, (long) status << (item % ITEMS_PER_WORD * 2));
+        }
+    }
+
+    /**
+     * Applies a batch of balance changes. Each item is accepted or rejected on its own, exactly
+     * as if changeAccountAmount had been called for each in order, but instead of throwing, the
+     * outcome of every item is returned as a status.
+     *
+     * The items are sorted by account so that each account is looked up once and locked once
+     * for all of its items, which are still applied in batch order. Groups of accounts are
+     * applied in parallel on the common fork-join pool. If a journal is attached, this method
+     * returns once every applied change is durable. Once the journal has failed, the batch is
+     * refused before anything is changed.
+     *
+     * @param accountKeys the key of the account of each item, each built with key.
+     * @param amounts the amount in minor units of each item (negative for withdrawal, positive for deposit).
+     * @return the status of every item.
+     * @throws IllegalArgumentException if the arrays are not the same length.
+     * @throws UncheckedIOException if the attached journal has failed.
      */
-    public void changeAccountAmount(final int accountId, final double amount) throws NoSuchAccount, InsufficientFunds {
-        int index = findAccount(accountId);  // Find the index of the account ID
-        double newBalance = accountBalances[index] + amount;  // Calculate new balance
+    public BatchResult applyBatch(final long[] accountKeys, final long[] amounts) {
+        if (accountKeys.length != amounts.length) {
+            throw new IllegalArgumentException("Account keys and amounts must be the same length");
+        }
+        if (journal != null && journal.hasFailed()) {
+            throw journalFailed();
+        }
+        final int size = accountKeys.length;
+        final long[] statusWords = new long[(size + BatchResult.ITEMS_PER_WORD - 1) / BatchResult.ITEMS_PER_WORD];
 
-        if (newBalance < 0) {
-            throw new InsufficientFunds(accountId, amount);  // Throw exception if funds are insufficient
+        // Pack each item as (slot << 32 | item) so that sorting groups items by account and
+        // keeps each account's items in batch order
+        final long[] order = new long[size];
+        int found = 0;
+        for (int i = 0; i < size; i++) {
+            final int slot = accountIndex.find(accountKeys[i]);
+            if (slot == AccountIndex.EMPTY) {
+                BatchResult.setStatus(statusWords, i, NO_SUCH_ACCOUNT);
+            } else {
+                order[found++] = ((long) slot << 32) | i;
+            }
         }
+        Arrays.parallelSort(order, 0, found);
 
-        accountBalances[index] = newBalance;  // Update balance
+        final TransactionJournal journal = this.journal;
+        final long journalSeq = ForkJoinPool.commonPool().invoke(
+                new BatchTask(order, 0, found, amounts, statusWords, journal));
+        if (journal != null && journalSeq > 0) {
+            journal.awaitDurable(journalSeq);  // One wait covers every record of the batch
+        }
+        return new BatchResult(size, statusWords);
     }
 
     /**
-     * Searches for the given account ID in the accountIds array. If found, returns the index
-     * of the account ID in the array. If not found, throws a NoSuchAccount exception.
+     * BatchTask applies the sorted batch items in [from, to), splitting itself in half at an
+     * account boundary until the range is at most BATCH_TASK_SIZE items. It returns the
+     * highest journal sequence number it appended, or 0 if it appended none.
+     */
+    private final class BatchTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] order;
+        private final int from;
+        private final int to;
+        private final long[] amounts;
+        private final long[] statusWords;
+        private final transient TransactionJournal journal;
+
+        BatchTask(final long[] order, final int from, final int to, final long[] amounts,
+                  final long[] statusWords, final TransactionJournal journal) {
+            this.order = order;
+            this.from = from;
+            this.to = to;
+            this.amounts = amounts;
+            this.statusWords = statusWords;
+            this.journal = journal;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from > BATCH_TASK_SIZE) {
+                final int middle = groupStart(from + (to - from) / 2);
+                if (middle > from) {
+                    final BatchTask right = new BatchTask(order, middle, to, amounts, statusWords, journal);
+                    right.fork();
+                    final long leftSeq = new BatchTask(order, from, middle, amounts, statusWords, journal).compute();
+                    return Math.max(leftSeq, right.join());
+                }
+            }
+            return apply();
+        }
+
+        /**
+         * @return the index of the first item of the account that the given item belongs to,
+         *         or the index after that account's items if it starts at from.
+         */
+        private int groupStart(final int item) {
+            final long slot = order[item] >>> 32;
+            int i = item;
+            while (i > from && order[i - 1] >>> 32 == slot) {
+                i--;
+            }
+            if (i > from) {
+                return i;
+            }
+            i = item;
+            while (i < to && order[i] >>> 32 == slot) {
+                i++;
+            }
+            return i < to ? i : from;
+        }
+
+        private long apply() {
+            long journalSeq = 0;
+            int i = from;
+            while (i < to) {
+                final int slot = (int) (order[i] >>> 32);
+                final StampedLock lock = locks[slot & lockMask];
+                final long stamp = lock.writeLock();
+                try {
+                    long balance = store.balance(slot);
+                    do {
+                        final int item = (int) order[i];
+                        final long amount = amounts[item];
+                        final long newBalance = balance + amount;
+                        if (balance == NO_BALANCE) {
+                            BatchResult.setStatus(statusWords, item, NO_SUCH_ACCOUNT);  // Removed since it was looked up
+                        } else if (overflows(balance, amount, newBalance)) {
+                            BatchResult.setStatus(statusWords, item, OVERFLOW);
+                        } else if (newBalance < 0) {
+                            BatchResult.setStatus(statusWords, item, INSUFFICIENT_FUNDS);
+                        } else {
+                            balance = newBalance;
+                            store.setBalance(slot, newBalance);
+                            if (journal != null) {
+                                journalSeq = journal.append(store.key(slot), newBalance);
+                            }
+                        }
+                        i++;
+                    } while (i < to && (int) (order[i] >>> 32) == slot);
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
+            }
+            return journalSeq;
+        }
+    }
+
+    /**
+     * Attaches a write-ahead journal. From then on every balance change is appended to the
+     * journal, and changeAccountAmount returns only once the change is durable according to
+     * the journal's mode. Call this after replaying the journal and before sessions start.
+     *
+     * @param journal the journal to log balance changes to.
+     */
+    public void attachJournal(final TransactionJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Attaches withdrawal limits. From then on every withdrawal made through
+     * changeAccountAmount, changeAccountAmountAt or tryChangeAccountAmount is checked
+     * against them, and they grow as accounts are added. Call this before sessions start.
      *
+     * @param limits the limits to enforce.
+     */
+    public void attachLimits(final WithdrawalLimits limits) {
+        synchronized (writeLock) {
+            limits.ensureCapacity(slotCount);
+            this.limits = limits;
+        }
+    }
+
+    /**
+     * @return the number of account slots handed out, including those of removed accounts;
+     *         every slot is below this.
+     */
+    public int size() {
+        return slotCount;
+    }
+
+    /**
+     * Adds an account while sessions may be running. The account gets a new slot at the end
+     * of the store, which is filled in before it is published. If a journal is attached, the
+     * opening balance is journaled, and this method waits until it is durable, so that
+     * replaying the journal after the account was removed and added again ends with the
+     * balance of the new account.
+     *
+     * @param bankId the bank identifier.
+     * @param accountId the account identifier.
+     * @param balance the opening balance in minor units.
+     * @throws IllegalArgumentException if the account already exists or the balance is negative.
+     * @throws UncheckedIOException if the attached journal has failed; the account is not added.
+     */
+    public void addAccount(final int bankId, final int accountId, final long balance) {
+        final long accountKey = key(bankId, accountId);
+        if (balance < 0 || accountKey == REMOVED) {
+            throw new IllegalArgumentException("Invalid account " + bankId + "/" + accountId + " with balance " + balance);
+        }
+        synchronized (writeLock) {
+            if (accountIndex.find(accountKey) != AccountIndex.EMPTY) {
+                throw new IllegalArgumentException("Account already exists: " + bankId + "/" + accountId);
+            }
+            final int slot = slotCount;
+            store.ensureCapacity(slot + 1);  // Adds a segment only when the last one is full
+            if (limits != null) {
+                limits.ensureCapacity(slot + 1);
+            }
+            store.setKey(slot, accountKey);
+            store.setBalance(slot, balance);
+            final TransactionJournal journal = this.journal;
+            if (journal != null) {
+                journal.awaitDurable(journal.append(accountKey, balance));  // Before any change to the account
+            }
+            slotCount = slot + 1;  // Publishes the slot's contents
+            accountIndex.insert(accountKey, slot);  // Visible to lookups from here on
+        }
+    }
+
+    /**
+     * Removes an account while sessions may be running. Changes already under way complete
+     * first; later ones, including those of sessions that hold the account's slot, fail with
+     * NoSuchAccount. The slot is not reused, so it can never come to hold another account.
+     *
+     * @param bankId the bank identifier.
      * @param accountId the account identifier.
-     * @return the index of the account in the accountIds array.
-     * @throws NoSuchAccount if the account ID is not found.
+     * @return the balance the account had when it was removed, in minor units.
+     * @throws NoSuchAccount if the account is not found.
+     */
+    public long removeAccount(final int bankId, final int accountId) throws NoSuchAccount {
+        synchronized (writeLock) {
+            final int slot = accountIndex.remove(key(bankId, accountId));
+            if (slot == AccountIndex.EMPTY) {
+                throw new NoSuchAccount(bankId, accountId);
+            }
+            final long balance;
+            final StampedLock lock = locks[slot & lockMask];
+            final long stamp = lock.writeLock();
+            try {
+                balance = store.balance(slot);
+                store.setKey(slot, REMOVED);
+                store.setBalance(slot, NO_BALANCE);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            return balance;
+        }
+    }
+
+    /**
+     * Sets the balance of an account to a value recovered from the journal. This bypasses
+     * the funds check and is not itself journaled.
+     *
+     * @param accountKey the account key.
+     * @param balance the recovered balance in minor units.
+     * @return true if the account exists and was restored, false if it is unknown.
      */
-    private int findAccount(final int accountId) throws NoSuchAccount {
-        for (int i = 0; i < accountIds.length; i++) {
-            if (accountIds[i] == accountId) {
-                return i;  // Return index if account ID is found
+    public boolean restoreAccountBalance(final long accountKey, final long balance) {
+        final int index = accountIndex.find(accountKey);
+        if (index == AccountIndex.EMPTY) {
+            return false;
+        }
+        final StampedLock lock = locks[index & lockMask];
+        final long stamp = lock.writeLock();
+        try {
+            if (store.balance(index) == NO_BALANCE) {
+                return false;  // Removed since it was looked up
             }
+            store.setBalance(index, balance);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return true;
+    }
+
+    /**
+     * Confirms that a cached slot still holds the given account, and looks the account up
+     * again if it does not. A slot only goes stale if the account has been removed, which the
+     * key comparison detects, so a valid slot costs one array read. The check is repeated
+     * under the stripe lock by whatever uses the slot.
+     *
+     * @param slot the cached slot.
+     * @param bankId the bank identifier.
+     * @param accountId the account identifier.
+     * @return the current slot of the account.
+     * @throws NoSuchAccount if the account is not found.
+     */
+    private int checkSlot(final int slot, final int bankId, final int accountId) throws NoSuchAccount {
+        final long accountKey = key(bankId, accountId);
+        if (slot >= 0 && slot < slotCount && accountKey != REMOVED && store.key(slot) == accountKey) {
+            return slot;
+        }
+        return findAccount(bankId, accountId);  // Stale slot; fall back to the index
+    }
+
+    /**
+     * Looks up the given account in the hash index. If found, returns the slot of the
+     * account in the store. If not found, throws a NoSuchAccount exception.
+     *
+     * @param bankId the bank identifier.
+     * @param accountId the account identifier.
+     * @return the slot of the account in the store.
+     * @throws NoSuchAccount if the account is not found.
+     */
+    private int findAccount(final int bankId, final int accountId) throws NoSuchAccount {
+        final int i = accountIndex.find(key(bankId, accountId));
+        if (i == AccountIndex.EMPTY) {
+            throw new NoSuchAccount(bankId, accountId);  // Throw exception if account is not found
         }
-        throw new NoSuchAccount(accountId);  // Throw exception if account ID is not found
+        return i;  // Return index if account is found
     }
 }
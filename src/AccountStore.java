@@ -0,0 +1,81 @@
+/**
+ * The AccountStore interface holds the key and balance of every account slot for
+ * AccountMapping. A slot keeps its place for the life of the store, and the store grows
+ * without moving existing slots.
+ *
+ * Only AccountMapping's writer grows the store, one thread at a time. Reads and writes of
+ * individual slots are guarded by AccountMapping's stripe locks, except for its optimistic
+ * reads, which a store must allow to run alongside a write without failing.
+ *
+ * Two stores are provided:
+ * - HEAP: HeapAccountStore, long arrays on the Java heap. The fastest to access.
+ * - OFF_HEAP: OffHeapAccountStore, direct memory outside the heap, for tens of millions of
+ *   accounts whose arrays would otherwise make the heap, and the work of the collector,
+ *   larger.
+ */
+public interface AccountStore {
+    /**
+     * The Kind enum selects which store AccountMapping creates.
+     */
+    enum Kind {
+        HEAP, OFF_HEAP;
+
+        /**
+         * Parses a store name, such as "heap" or "off-heap", ignoring case.
+         *
+         * @param s the store name.
+         * @return the corresponding Kind.
+         * @throws IllegalArgumentException if the name is not a known store.
+         */
+        public static Kind parse(final String s) {
+            return valueOf(s.toUpperCase().replace('-', '_'));
+        }
+
+        /**
+         * Creates an empty store of this kind.
+         *
+         * @param capacity the number of slots to make room for.
+         * @return the store.
+         */
+        public AccountStore create(final int capacity) {
+            return this == HEAP ? new HeapAccountStore(capacity) : new OffHeapAccountStore(capacity);
+        }
+    }
+
+    /**
+     * @return the number of slots the store has room for.
+     */
+    int capacity();
+
+    /**
+     * Grows the store until it has room for the given number of slots. Must only be called
+     * by one thread at a time.
+     *
+     * @param capacity the number of slots to make room for.
+     */
+    void ensureCapacity(int capacity);
+
+    /**
+     * @param slot the slot.
+     * @return the account key held in the slot.
+     */
+    long key(int slot);
+
+    /**
+     * @param slot the slot.
+     * @param accountKey the account key to hold in the slot.
+     */
+    void setKey(int slot, long accountKey);
+
+    /**
+     * @param slot the slot.
+     * @return the balance held in the slot, in minor units.
+     */
+    long balance(int slot);
+
+    /**
+     * @param slot the slot.
+     * @param balance the balance to hold in the slot, in minor units.
+     */
+    void setBalance(int slot, long balance);
+}
@@ -0,0 +1,181 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The AtmMetrics class collects operational metrics from ATM sessions: a latency histogram
+ * for card validation and for each Action, and a counter for each kind of Failure. One
+ * instance is attached to every session as its ATM.Listener and is safe to share.
+ *
+ * Recording does not allocate or lock. A step costs one histogram bucket increment, one
+ * striped sum update and a read of the current maximum; a failure costs one striped counter
+ * update.
+ *
+ * The metrics can be read through the getters, written as a text report on demand or
+ * periodically, or exported over JMX as an AtmMetricsMXBean.
+ */
+public final class AtmMetrics implements ATM.Listener, AtmMetricsMXBean {
+    private static final String CARD_STEP = "CARD";
+
+    private final LatencyHistogram cards = new LatencyHistogram();
+    private final LatencyHistogram[] actions = new LatencyHistogram[ATM.Action.values().length];
+    private final LongAdder[] failures = new LongAdder[ATM.Failure.values().length];
+
+    /**
+     * Constructor for the AtmMetrics class, with every histogram and counter empty.
+     */
+    public AtmMetrics() {
+        for (int i = 0; i < actions.length; i++) {
+            actions[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < failures.length; i++) {
+            failures[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void cardInserted(final long nanos) {
+        cards.record(nanos);
+    }
+
+    @Override
+    public void actionCompleted(final ATM.Action action, final long nanos) {
+        actions[action.ordinal()].record(nanos);
+    }
+
+    @Override
+    public void failed(final ATM.Failure failure) {
+        failures[failure.ordinal()].increment();
+    }
+
+    /**
+     * @return the latencies of card validation.
+     */
+    public LatencyHistogram getCardHistogram() {
+        return cards;
+    }
+
+    /**
+     * @param action the action.
+     * @return the latencies of the given action.
+     */
+    public LatencyHistogram getHistogram(final ATM.Action action) {
+        return actions[action.ordinal()];
+    }
+
+    /**
+     * @param failure the kind of failure.
+     * @return the number of times it occurred.
+     */
+    public long getFailureCount(final ATM.Failure failure) {
+        return failures[failure.ordinal()].sum();
+    }
+
+    @Override
+    public Map<String, Long> getStepCounts() {
+        final Map<String, Long> counts = new LinkedHashMap<>();
+        counts.put(CARD_STEP, cards.getCount());
+        for (ATM.Action action : ATM.Action.values()) {
+            counts.put(action.name(), actions[action.ordinal()].getCount());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getFailureCounts() {
+        final Map<String, Long> counts = new LinkedHashMap<>();
+        for (ATM.Failure failure : ATM.Failure.values()) {
+            counts.put(failure.name(), getFailureCount(failure));
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getMeanMicros() {
+        return perStep(histogram -> histogram.getMean() / 1e3);
+    }
+
+    @Override
+    public Map<String, Double> getP99Micros() {
+        return perStep(histogram -> histogram.getPercentile(99) / 1e3);
+    }
+
+    @Override
+    public Map<String, Double> getMaxMicros() {
+        return perStep(histogram -> histogram.getMax() / 1e3);
+    }
+
+    @Override
+    public String getReport() {
+        final ByteArrayOutputStream text = new ByteArrayOutputStream();
+        write(new PrintStream(text, true, StandardCharsets.UTF_8));
+        return text.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a latency table with one row per step that occurred, followed by the failure
+     * counts.
+     *
+     * @param out the stream to write to.
+     */
+    public void write(final PrintStream out) {
+        LatencyHistogram.writeTableHeader(out);
+        cards.writeTableRow(out, CARD_STEP);
+        for (ATM.Action action : ATM.Action.values()) {
+            actions[action.ordinal()].writeTableRow(out, action.name());
+        }
+        for (ATM.Failure failure : ATM.Failure.values()) {
+            out.printf("%-18s %,12d%n", failure.name(), getFailureCount(failure));
+        }
+    }
+
+    /**
+     * Starts a daemon thread that writes the report to the given stream at a fixed period.
+     *
+     * @param out the stream to write to.
+     * @param period the time between reports.
+     * @param unit the unit of the period.
+     * @return the reporting thread, which stops when interrupted.
+     */
+    public Thread startReporting(final PrintStream out, final long period, final TimeUnit unit) {
+        final Thread reporter = new Thread(() -> {
+            try {
+                while (true) {
+                    unit.sleep(period);
+                    write(out);
+                }
+            } catch (InterruptedException e) {
+                // Reporting stopped
+            }
+        }, "metrics-reporter");
+        reporter.setDaemon(true);
+        reporter.start();
+        return reporter;
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server as "atm:type=AtmMetrics".
+     *
+     * @throws JMException if the name is already registered.
+     */
+    public void registerMBean() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("atm:type=AtmMetrics"));
+    }
+
+    private Map<String, Double> perStep(final ToDoubleFunction<LatencyHistogram> value) {
+        final Map<String, Double> values = new LinkedHashMap<>();
+        values.put(CARD_STEP, value.applyAsDouble(cards));
+        for (ATM.Action action : ATM.Action.values()) {
+            values.put(action.name(), value.applyAsDouble(actions[action.ordinal()]));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,37 @@
+import java.util.Map;
+
+/**
+ * The AtmMetricsMXBean interface is the JMX view of AtmMetrics. Every map is keyed by step
+ * (CARD or an action name) or, for failure counts, by failure name.
+ */
+public interface AtmMetricsMXBean {
+    /**
+     * @return the number of times each step completed.
+     */
+    Map<String, Long> getStepCounts();
+
+    /**
+     * @return the number of times each kind of failure occurred.
+     */
+    Map<String, Long> getFailureCounts();
+
+    /**
+     * @return the mean latency of each step, in microseconds.
+     */
+    Map<String, Double> getMeanMicros();
+
+    /**
+     * @return the 99th percentile latency of each step, in microseconds.
+     */
+    Map<String, Double> getP99Micros();
+
+    /**
+     * @return the longest latency of each step, in microseconds.
+     */
+    Map<String, Double> getMaxMicros();
+
+    /**
+     * @return the same text report as AtmMetrics.write.
+     */
+    String getReport();
+}
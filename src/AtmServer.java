@@ -0,0 +1,125 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.NoSuchElementException;
+
+/**
+ * The AtmServer class hosts many ATM terminal sessions over loopback TCP connections.
+ * Every accepted connection gets its own ATM running on a virtual thread, reading commands
+ * from the socket through a BufferedInputScanner and writing prompts and results back to it.
+ *
+ * All sessions share the same BankMapping and AccountMapping, which is safe because
+ * AccountMapping serializes updates to each account.
+ *
+ * A session ends when the terminal sends "exit" or closes its connection.
+ *
+ * With pipelining on, each session sends its responses only once it has handled every
+ * command the terminal has sent so far, in one write per batch (see ATM).
+ *
+ * Usage:
+ *   AtmServer server = new AtmServer(bankMapping, accountMapping, 9000);
+ *   server.serve();
+ */
+public final class AtmServer {
+    private static final int BACKLOG = 4096;
+
+    /**
+     * Input buffer size per session. Terminals send short lines, and thousands of sessions
+     * may be open at once.
+     */
+    private static final int SESSION_BUFFER_SIZE = 1024;
+
+    private final BankMapping bankMapping;
+    private final AccountMapping accountMapping;
+    private final int port;
+    private ATM.Listener listener;
+    private TransactionHistory history;
+    private boolean pipelined;
+
+    /**
+     * Constructor for the AtmServer class.
+     *
+     * @param bankMapping the BankMapping shared by every session.
+     * @param accountMapping the AccountMapping shared by every session.
+     * @param port the loopback TCP port to listen on.
+     */
+    public AtmServer(final BankMapping bankMapping,
+                     final AccountMapping accountMapping,
+                     final int port) {
+        this.bankMapping = bankMapping;
+        this.accountMapping = accountMapping;
+        this.port = port;
+    }
+
+    /**
+     * Attaches a listener to every session started from now on, for example AtmMetrics.
+     * Call this before serve.
+     *
+     * @param listener the listener to notify; it must be safe to call from many sessions at once.
+     */
+    public void attachListener(final ATM.Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Attaches a transaction history to every session started from now on. Call this before serve.
+     *
+     * @param history the history shared by the sessions.
+     */
+    public void attachHistory(final TransactionHistory history) {
+        this.history = history;
+    }
+
+    /**
+     * Turns pipelining on or off for every session started from now on. Call this before serve.
+     *
+     * @param pipelined whether to pipeline the sessions.
+     */
+    public void setPipelined(final boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    /**
+     * Accepts terminal connections until the server socket fails, starting one virtual
+     * thread per connection.
+     *
+     * @throws IOException if the server socket cannot be opened or accepting fails.
+     */
+    public void serve() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress())) {
+            System.out.println("ATM server listening on " + serverSocket.getLocalSocketAddress());
+            final Thread.Builder sessions = Thread.ofVirtual().name("atm-session-", 0);
+            while (true) {
+                final Socket socket = serverSocket.accept();
+                sessions.start(() -> runSession(socket));
+            }
+        }
+    }
+
+    /**
+     * Runs one ATM session over the given connection and closes it when the session ends.
+     *
+     * @param socket the connection of the terminal.
+     */
+    private void runSession(final Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            final InputScanner input = new BufferedInputScanner(socket.getInputStream(), SESSION_BUFFER_SIZE);
+            final PrintStream output = new PrintStream(new BufferedOutputStream(socket.getOutputStream()), !pipelined);
+            final ATM atm = new ATM(bankMapping, accountMapping, input, output);
+            atm.setPipelined(pipelined);
+            if (listener != null) {
+                atm.attachListener(listener);
+            }
+            if (history != null) {
+                atm.attachHistory(history);
+            }
+            atm.start();
+        } catch (IOException | NoSuchElementException e) {
+            // The terminal disconnected; nothing else to clean up
+        }
+    }
+}
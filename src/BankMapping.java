@@ -1,16 +1,25 @@
+import java.util.Objects;
+
 /**
  * The BankMapping class is responsible for storing and managing the mapping
  * of bank identifiers to their respective bank names. It allows searching
  * for a bank name by its identifier and throws a custom exception if the bank
  * identifier is not found.
  *
- * This class handles the input of bank data and maintains two arrays:
- * - bankIds: an array of bank identifiers.
- * - bankNames: an array of corresponding bank names.
+ * Bank IDs are only CreditCard.BANK_ID_LIMIT wide, so the banks are held in a dense table
+ * indexed directly by bank ID, with null for IDs that no bank uses. A lookup is a single
+ * array load.
+ *
+ * Banks can be added, renamed and removed while sessions run. A change copies the table,
+ * applies itself to the copy and publishes the copy through a volatile field, so lookups
+ * take no lock and always see either the whole change or none of it. Changes are rare, and
+ * copying the table costs a few tens of microseconds. The version counter is bumped after
+ * each change is published, so a session can cheaply check whether a name it holds may
+ * have gone stale.
  */
 public final class BankMapping {
-    private final int[] bankIds;
-    private final String[] bankNames;
+    private volatile String[] bankNames;
+    private volatile int version;
 
     /**
      * Constructor that reads in bank identifiers and bank names from the InputScanner.
@@ -19,23 +28,121 @@ public final class BankMapping {
      *
      * @param numBanks the number of banks to read in.
      * @param input the InputScanner used to read the input data.
+     * @throws IllegalArgumentException if a bank ID is out of range or appears twice.
      */
     public BankMapping(final int numBanks, final InputScanner input) {
-        final int[] bankIds = new int[numBanks];
-        final String[] bankNames = new String[numBanks];
+        final String[] bankNames = new String[CreditCard.BANK_ID_LIMIT];
         for (int i = 0; i < numBanks; i++) {
-            bankIds[i] = input.nextIntLine();  // Read bank ID
-            bankNames[i] = input.nextLine();   // Read bank name
+            final int bankId = input.nextIntLine();  // Read bank ID
+            put(bankNames, bankId, input.nextLine());  // Read bank name
         }
-        this.bankIds = bankIds;
         this.bankNames = bankNames;
     }
 
+    /**
+     * Constructor that takes bank identifiers and bank names that have already been loaded.
+     * The arrays must be the same length.
+     *
+     * @param bankIds the bank identifiers.
+     * @param bankNames the name of each bank, in the same order as the identifiers.
+     * @throws IllegalArgumentException if a bank ID is out of range or appears twice.
+     */
+    public BankMapping(final int[] bankIds, final String[] bankNames) {
+        if (bankIds.length != bankNames.length) {
+            throw new IllegalArgumentException("Bank identifiers and names must be the same length");
+        }
+        final String[] table = new String[CreditCard.BANK_ID_LIMIT];
+        for (int i = 0; i < bankIds.length; i++) {
+            put(table, bankIds[i], bankNames[i]);
+        }
+        this.bankNames = table;
+    }
+
+    /**
+     * Stores a bank name in the table, refusing IDs that no card can carry and IDs that
+     * were already given a name.
+     *
+     * @param table the table indexed by bank ID.
+     * @param bankId the bank identifier.
+     * @param bankName the name of the bank.
+     * @throws IllegalArgumentException if the bank ID is out of range or already present.
+     */
+    private static void put(final String[] table, final int bankId, final String bankName) {
+        if (bankId < 0 || bankId >= table.length) {
+            throw new IllegalArgumentException("Bank ID out of range: " + bankId);
+        }
+        if (table[bankId] != null) {
+            throw new IllegalArgumentException("Duplicate bank ID: " + bankId);
+        }
+        table[bankId] = Objects.requireNonNull(bankName, "bankName");
+    }
+
+    /**
+     * Adds a bank while sessions may be running.
+     *
+     * @param bankId the bank identifier.
+     * @param bankName the name of the bank.
+     * @throws IllegalArgumentException if the bank ID is out of range or already present.
+     */
+    public synchronized void addBank(final int bankId, final String bankName) {
+        final String[] table = bankNames.clone();
+        put(table, bankId, bankName);
+        publish(table);
+    }
+
+    /**
+     * Renames a bank while sessions may be running.
+     *
+     * @param bankId the bank identifier.
+     * @param bankName the new name of the bank.
+     * @throws NoSuchBank if no bank has the given ID.
+     */
+    public synchronized void renameBank(final int bankId, final String bankName) throws NoSuchBank {
+        getBankName(bankId);  // Check that the bank exists
+        final String[] table = bankNames.clone();
+        table[bankId] = Objects.requireNonNull(bankName, "bankName");
+        publish(table);
+    }
+
+    /**
+     * Removes a bank while sessions may be running. The bank's accounts are left in the
+     * AccountMapping; cards of the bank are refused from then on.
+     *
+     * @param bankId the bank identifier.
+     * @throws NoSuchBank if no bank has the given ID.
+     */
+    public synchronized void removeBank(final int bankId) throws NoSuchBank {
+        getBankName(bankId);  // Check that the bank exists
+        final String[] table = bankNames.clone();
+        table[bankId] = null;
+        publish(table);
+    }
+
+    /**
+     * Publishes a changed table, then bumps the version. Called with the monitor held.
+     */
+    private void publish(final String[] table) {
+        bankNames = table;
+        version++;  // After the table, so a reader that sees the new version sees the new names
+    }
+
+    /**
+     * Returns a counter that changes whenever a bank is added, renamed or removed. Read it
+     * before looking up a name; if it has not changed since, the name is still current.
+     *
+     * @return the version of the bank table.
+     */
+    public int getVersion() {
+        return version;
+    }
+
     /**
      * The NoSuchBank class is a custom exception that is thrown when a requested
-     * bank identifier is not found in the bankIds array.
+     * bank identifier is out of range or has no name in the dense bank name table.
      */
     public static final class NoSuchBank extends NoSuchException {
+        private static final long serialVersionUID = 1L;
+
         private final int bankId;
 
         /**
@@ -65,21 +172,33 @@ public final class BankMapping {
     }
 
     /**
-     * Searches for the given bank ID in the bankIds array. If found, it returns the
-     * corresponding bank name from the bankNames array. If not found, it throws a
+     * Looks up the name of the bank with the given ID. If no bank has that ID, it throws a
      * NoSuchBank exception.
      *
      * @param bankId the bank identifier to search for.
      * @return the name of the bank associated with the bank ID.
-     * @throws NoSuchBank if the bank ID is not found in the bankIds array.
+     * @throws NoSuchBank if no bank has the given ID.
      */
     public String getBankName(final int bankId) throws NoSuchBank {
-        for (int i = 0; i < bankIds.length; i++) {
-            if (bankIds[i] == bankId) {
-                return bankNames[i];
-            }
+        final String bankName = tryGetBankName(bankId);
+        if (bankName == null) {
+            throw new NoSuchBank(bankId); // Bank ID not found
         }
-        throw new NoSuchBank(bankId); // Bank ID not found
+        return bankName;
     }
 
+    /**
+     * Looks up the given bank ID like getBankName, but returns null instead of throwing
+     * when the bank is not found.
+     *
+     * @param bankId the bank identifier to search for.
+     * @return the name of the bank associated with the bank ID, or null if it is not found.
+     */
+    public String tryGetBankName(final int bankId) {
+        final String[] bankNames = this.bankNames;  // One volatile read per lookup
+        if (Integer.compareUnsigned(bankId, bankNames.length) >= 0) {
+            return null;  // One unsigned compare rejects negative and too-large IDs alike
+        }
+        return bankNames[bankId];
+    }
 }
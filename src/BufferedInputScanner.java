@@ -0,0 +1,305 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+/**
+ * The BufferedInputScanner class is a high-throughput InputScanner that reads from an
+ * InputStream into a byte buffer instead of going through java.util.Scanner.
+ *
+ * It keeps the same contract as InputScanner: every method consumes exactly one line,
+ * a line may end with "\n" or "\r\n", nextIntLine and nextDoubleLine throw
+ * NumberFormatException for malformed input, and reading past the end of the input throws
+ * NoSuchElementException, including when the underlying stream fails. Integers, amounts
+ * of money and plain decimal numbers are parsed directly from the bytes without building
+ * a String; only nextLine, errors and unusual doubles (exponents, more than 15 significant
+ * digits, NaN, ...) create one.
+ *
+ * Usage:
+ *   InputScanner scanner = new BufferedInputScanner(System.in);
+ */
+public final class BufferedInputScanner extends InputScanner {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Largest mantissa that a double represents exactly.
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /**
+     * Powers of ten that a double represents exactly.
+     */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final InputStream in;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+
+    // Bounds of the line most recently found by nextLineBounds, excluding the line separator
+    private int lineStart;
+    private int lineEnd;
+    private final LineView lineView = new LineView();
+
+    /**
+     * Constructs a BufferedInputScanner over the given stream.
+     *
+     * @param in the stream to read input from.
+     */
+    public BufferedInputScanner(final InputStream in) {
+        this(in, BUFFER_SIZE);
+    }
+
+    /**
+     * Constructs a BufferedInputScanner over the given stream with a given initial buffer
+     * size. The buffer still grows if a single line does not fit.
+     *
+     * @param in the stream to read input from.
+     * @param bufferSize the initial size of the buffer in bytes.
+     */
+    public BufferedInputScanner(final InputStream in, final int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Reads and returns the next line of text input, decoded as UTF-8.
+     *
+     * @return the next line of text input.
+     * @throws NoSuchElementException if there is no more input.
+     */
+    @Override
+    public String nextLine() {
+        nextLineBounds();
+        return lineString();
+    }
+
+    /**
+     * Reads the next line and returns a view of it over the buffer, without decoding it.
+     * Bytes are read as Latin-1, so the view is exact for ASCII text such as commands; its
+     * toString decodes the line as UTF-8. The view changes with the next read.
+     *
+     * @return the next line of text input.
+     * @throws NoSuchElementException if there is no more input.
+     */
+    @Override
+    public CharSequence nextLineView() {
+        nextLineBounds();
+        return lineView;
+    }
+
+    /**
+     * Tells whether the rest of a line is already in the buffer, without reading more input.
+     *
+     * @return true if the next line can be read without blocking.
+     */
+    @Override
+    public boolean hasBufferedLine() {
+        for (int scan = position; scan < limit; scan++) {
+            if (buffer[scan] == '\n') {
+                return true;
+            }
+        }
+        return endOfInput && position < limit;  // Last line without a trailing newline
+    }
+
+    /**
+     * Reads the next line and parses it as an integer directly from the input bytes.
+     *
+     * @return the next integer input.
+     * @throws NumberFormatException if the line is not a valid integer.
+     * @throws NoSuchElementException if there is no more input.
+     */
+    @Override
+    public int nextIntLine() {
+        nextLineBounds();
+        int i = lineStart;
+        final int end = lineEnd;
+        boolean negative = false;
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        if (i == end) {
+            throw invalidNumber();
+        }
+        // Accumulate negatively so that Integer.MIN_VALUE parses without overflow
+        final int limitValue = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        final int multiplyMin = limitValue / 10;
+        int result = 0;
+        for (; i < end; i++) {
+            final int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9 || result < multiplyMin) {
+                throw invalidNumber();
+            }
+            result *= 10;
+            if (result < limitValue + digit) {
+                throw invalidNumber();
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Reads the next line and parses it as a double. Plain decimal numbers of up to 15
+     * significant digits are parsed directly from the input bytes and rounded exactly as
+     * Double.parseDouble would; anything else falls back to Double.parseDouble.
+     *
+     * @return the next double input.
+     * @throws NumberFormatException if the line is not a valid double.
+     * @throws NoSuchElementException if there is no more input.
+     */
+    @Override
+    public double nextDoubleLine() {
+        nextLineBounds();
+        int i = lineStart;
+        final int end = lineEnd;
+        boolean negative = false;
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;  // -1 until the decimal point is seen
+        for (; i < end; i++) {
+            final byte b = buffer[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+                if (++digits > 15) {
+                    return parseDoubleSlow();
+                }
+            } else if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                return parseDoubleSlow();  // Exponent, whitespace, suffix or malformed input
+            }
+        }
+        if (digits == 0 || mantissa >= MAX_EXACT_MANTISSA) {
+            return parseDoubleSlow();
+        }
+        // Both operands are exact doubles, so the division is correctly rounded
+        final double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads the next line and parses it as an amount of money directly from the input bytes.
+     *
+     * @return the amount in minor units.
+     * @throws NumberFormatException if the line is not a valid amount.
+     * @throws NoSuchElementException if there is no more input.
+     */
+    @Override
+    public long nextMoneyLine() {
+        nextLineBounds();
+        return Money.parse(lineView);
+    }
+
+    private double parseDoubleSlow() {
+        return Double.parseDouble(lineString());
+    }
+
+    private NumberFormatException invalidNumber() {
+        return new NumberFormatException("For input string: \"" + lineString() + "\"");
+    }
+
+    private String lineString() {
+        return new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * LineView presents the current line as a CharSequence over the buffer, so that it can be
+     * parsed without decoding it into a String. Bytes are read as Latin-1, which is exact for
+     * the ASCII digits and signs that parsers look for.
+     */
+    private final class LineView implements CharSequence {
+        @Override
+        public int length() {
+            return lineEnd - lineStart;
+        }
+
+        @Override
+        public char charAt(final int index) {
+            return (char) (buffer[lineStart + index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(final int start, final int end) {
+            return lineString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return lineString();
+        }
+    }
+
+    /**
+     * Finds the next line in the buffer, reading more input as needed, and consumes it.
+     * Afterwards the line occupies buffer[lineStart, lineEnd) without its separator.
+     */
+    private void nextLineBounds() {
+        int scan = position;
+        while (true) {
+            while (scan < limit) {
+                if (buffer[scan] == '\n') {
+                    setLine(position, scan);
+                    position = scan + 1;
+                    return;
+                }
+                scan++;
+            }
+            if (endOfInput) {
+                if (position == limit) {
+                    throw new NoSuchElementException("No line found");
+                }
+                setLine(position, limit);  // Last line without a trailing newline
+                position = limit;
+                return;
+            }
+            scan -= position;
+            fill();
+        }
+    }
+
+    private void setLine(final int start, final int end) {
+        lineStart = start;
+        lineEnd = end > start && buffer[end - 1] == '\r' ? end - 1 : end;
+    }
+
+    /**
+     * Moves the unconsumed bytes to the front of the buffer, growing it if a single line
+     * fills it entirely, and reads as much input as is available.
+     */
+    private void fill() {
+        final int remaining = limit - position;
+        if (remaining == buffer.length) {
+            final byte[] larger = new byte[buffer.length * 2];
+            System.arraycopy(buffer, position, larger, 0, remaining);
+            buffer = larger;
+        } else if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+        }
+        position = 0;
+        limit = remaining;
+        try {
+            final int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                endOfInput = true;
+            } else {
+                limit += read;
+            }
+        } catch (IOException e) {
+            endOfInput = true;  // Like Scanner, a failing source is treated as the end of input
+        }
+    }
+}
@@ -0,0 +1,266 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The CardBatchValidator class pre-screens large files of card numbers, one per line,
+ * using the same rules as CreditCard. The file is memory-mapped in chunks and the chunks
+ * are validated in parallel on the common fork-join pool.
+ *
+ * Validation goes through CreditCard.decode, so invalid records are counted without
+ * creating an exception per record. The result is a Report with valid and invalid counts
+ * and the number of valid cards per bank, which can be written out with bank names
+ * resolved through a BankMapping.
+ *
+ * Usage:
+ *   java CardBatchValidator BANKS_FILE CARDS_FILE [REPORT_FILE]
+ *   where BANKS_FILE holds the number of banks followed by bank ID / bank name line pairs.
+ */
+public final class CardBatchValidator {
+    /**
+     * Number of bytes of the file that a single task validates without splitting further.
+     */
+    private static final long CHUNK_SIZE = 8L << 20;
+
+    /**
+     * Longest line accepted. Anything longer is not a card number, so a chunk maps at most
+     * this many bytes past its end to finish the line it is in the middle of.
+     */
+    private static final int MAX_LINE_LENGTH = 64;
+
+    // Indexes into the counts array after the per-bank counts
+    private static final int INVALID_LENGTH = CreditCard.BANK_ID_LIMIT;
+    private static final int INVALID_CHECK_DIGIT = INVALID_LENGTH + 1;
+    private static final int MALFORMED = INVALID_LENGTH + 2;
+    private static final int NUM_COUNTS = INVALID_LENGTH + 3;
+
+    private static final long MALFORMED_LINE = Long.MIN_VALUE;  // Outside the int range
+
+    private CardBatchValidator() {
+    }
+
+    /**
+     * Validates every line of the given file.
+     *
+     * @param cards the file of card numbers, one per line.
+     * @return the counts of valid and invalid cards.
+     * @throws IOException if the file cannot be read.
+     */
+    public static Report validate(final Path cards) throws IOException {
+        try (FileChannel channel = FileChannel.open(cards, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final long[] counts = ForkJoinPool.commonPool().invoke(new ChunkTask(channel, size, 0, size));
+            return new Report(counts);
+        }
+    }
+
+    /**
+     * Report holds the outcome of validating a batch of card numbers.
+     */
+    public static final class Report {
+        private final long[] counts;
+
+        private Report(final long[] counts) {
+            this.counts = counts;
+        }
+
+        /**
+         * @return the number of cards that passed validation.
+         */
+        public long getValid() {
+            long valid = 0;
+            for (int bankId = 0; bankId < CreditCard.BANK_ID_LIMIT; bankId++) {
+                valid += counts[bankId];
+            }
+            return valid;
+        }
+
+        /**
+         * @return the number of cards that failed validation for any reason.
+         */
+        public long getInvalid() {
+            return counts[INVALID_LENGTH] + counts[INVALID_CHECK_DIGIT] + counts[MALFORMED];
+        }
+
+        /**
+         * @param bankId the bank identifier.
+         * @return the number of valid cards issued by the given bank.
+         */
+        public long getValid(final int bankId) {
+            return bankId >= 0 && bankId < CreditCard.BANK_ID_LIMIT ? counts[bankId] : 0;
+        }
+
+        /**
+         * Writes the totals and the per-bank breakdown, resolving bank names through the
+         * given BankMapping. Banks that issued no valid cards are left out.
+         *
+         * @param out the stream to write the report to.
+         * @param bankMapping the banks used to name each bank ID.
+         */
+        public void write(final PrintStream out, final BankMapping bankMapping) {
+            out.println("Valid cards: " + getValid());
+            out.println("Invalid cards: " + getInvalid());
+            out.println("  wrong length: " + counts[INVALID_LENGTH]);
+            out.println("  bad check digit: " + counts[INVALID_CHECK_DIGIT]);
+            out.println("  not a number: " + counts[MALFORMED]);
+            for (int bankId = 0; bankId < CreditCard.BANK_ID_LIMIT; bankId++) {
+                if (counts[bankId] == 0) {
+                    continue;
+                }
+                String bankName;
+                try {
+                    bankName = bankMapping.getBankName(bankId);
+                } catch (BankMapping.NoSuchBank e) {
+                    bankName = "Unknown bank";
+                }
+                out.println("Bank " + bankId + " (" + bankName + "): " + counts[bankId]);
+            }
+        }
+    }
+
+    /**
+     * ChunkTask validates the lines that start within [start, end) of the file, splitting
+     * itself in half until the range is at most CHUNK_SIZE bytes.
+     */
+    private static final class ChunkTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient FileChannel channel;
+        private final long fileSize;
+        private final long start;
+        private final long end;
+
+        ChunkTask(final FileChannel channel, final long fileSize, final long start, final long end) {
+            this.channel = channel;
+            this.fileSize = fileSize;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (end - start > CHUNK_SIZE) {
+                final long middle = start + (end - start) / 2;
+                final ChunkTask right = new ChunkTask(channel, fileSize, middle, end);
+                right.fork();
+                final long[] counts = new ChunkTask(channel, fileSize, start, middle).compute();
+                final long[] rightCounts = right.join();
+                for (int i = 0; i < NUM_COUNTS; i++) {
+                    counts[i] += rightCounts[i];
+                }
+                return counts;
+            }
+            try {
+                return validateChunk();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to map card file", e);
+            }
+        }
+
+        private long[] validateChunk() throws IOException {
+            final long[] counts = new long[NUM_COUNTS];
+            // Map one byte before the chunk to tell whether it starts mid-line, and enough
+            // after it to finish the last line that starts inside it
+            final long mapStart = Math.max(0, start - 1);
+            final long mapEnd = Math.min(fileSize, end + MAX_LINE_LENGTH);
+            if (mapEnd <= mapStart) {
+                return counts;
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+            final int limit = (int) (end - mapStart);
+            final int mapped = buffer.limit();
+
+            int pos = (int) (start - mapStart);
+            if (start > 0 && buffer.get(pos - 1) != '\n') {
+                // The previous chunk owns the line we are in the middle of
+                while (pos < mapped && buffer.get(pos) != '\n') {
+                    pos++;
+                }
+                pos++;
+            }
+
+            while (pos < limit) {
+                int lineEnd = pos;
+                while (lineEnd < mapped && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                final int textEnd = lineEnd > pos && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                if (textEnd > pos) {
+                    final long cardNum = lineEnd - pos > MAX_LINE_LENGTH ? MALFORMED_LINE : parseLine(buffer, pos, textEnd);
+                    if (cardNum == MALFORMED_LINE) {
+                        counts[MALFORMED]++;
+                    } else {
+                        final long decoded = CreditCard.decode((int) cardNum);
+                        if (decoded == CreditCard.INVALID_LENGTH) {
+                            counts[INVALID_LENGTH]++;
+                        } else if (decoded == CreditCard.INVALID_CHECK_DIGIT) {
+                            counts[INVALID_CHECK_DIGIT]++;
+                        } else {
+                            counts[CreditCard.bankId(decoded)]++;
+                        }
+                    }
+                }
+                pos = lineEnd + 1;  // Blank lines are skipped
+            }
+            return counts;
+        }
+
+        /**
+         * Parses a line as Integer.parseInt does for ASCII input: an optional sign followed by
+         * at least one digit, with nothing else and no overflow.
+         *
+         * @return the number, or MALFORMED_LINE if Integer.parseInt would refuse the line.
+         */
+        private static long parseLine(final MappedByteBuffer buffer, final int start, final int end) {
+            int i = start;
+            final boolean negative = buffer.get(i) == '-';
+            if (negative || buffer.get(i) == '+') {
+                i++;
+            }
+            if (i == end) {
+                return MALFORMED_LINE;
+            }
+            final long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+            long value = 0;
+            for (; i < end; i++) {
+                final byte b = buffer.get(i);
+                if (b < '0' || b > '9') {
+                    return MALFORMED_LINE;
+                }
+                value = value * 10 + (b - '0');
+                if (value > limit) {
+                    return MALFORMED_LINE;
+                }
+            }
+            return negative ? -value : value;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        final BankMapping bankMapping;
+        try (FileInputStream banks = new FileInputStream(args[0])) {
+            final InputScanner input = new InputScanner(new Scanner(banks));
+            bankMapping = new BankMapping(input.nextIntLine(), input);
+        }
+
+        final long start = System.nanoTime();
+        final Report report = validate(Path.of(args[1]));
+        final long elapsed = System.nanoTime() - start;
+
+        if (args.length > 2) {
+            try (PrintStream out = new PrintStream(args[2])) {
+                report.write(out, bankMapping);
+            }
+        } else {
+            report.write(System.out, bankMapping);
+        }
+        System.err.printf("Validated %d cards in %.1f ms%n", report.getValid() + report.getInvalid(), elapsed / 1e6);
+    }
+}
@@ -13,6 +13,27 @@ public class CreditCard {
     private static final int ACCOUNT_ID_LENGTH = 5;
     private static final String LENGTH_ERROR = "Card number must be length " + CARD_LENGTH;
 
+    // Bounds and divisors derived from the lengths above
+    private static final int MIN_CARD_NUMBER = pow10(CARD_LENGTH - 1);
+    private static final int MAX_CARD_NUMBER = pow10(CARD_LENGTH) - 1;
+    private static final int BANK_ID_DIVISOR = pow10(CARD_LENGTH - BANK_ID_LENGTH);
+    private static final int ACCOUNT_ID_MODULUS = pow10(ACCOUNT_ID_LENGTH);
+
+    /**
+     * Exclusive upper bound on the bank IDs that can appear on a card.
+     */
+    public static final int BANK_ID_LIMIT = pow10(BANK_ID_LENGTH);
+
+    /**
+     * Returned by decode when the card number is not exactly CARD_LENGTH digits long.
+     */
+    public static final long INVALID_LENGTH = -1;
+
+    /**
+     * Returned by decode when the card number fails Luhn's algorithm.
+     */
+    public static final long INVALID_CHECK_DIGIT = -2;
+
     private final int bankId;
     private final int accountId;
     private final int checkDigit;
@@ -25,17 +46,17 @@ public class CreditCard {
      * @throws IllegalArgumentException if the card number length is invalid or the check digit does not pass Luhn's algorithm.
      */
     public CreditCard(final int cardNum) {
-        if (numDigits(cardNum) != CARD_LENGTH) {
+        final long decoded = decode(cardNum);
+        if (decoded == INVALID_LENGTH) {
             throw new IllegalArgumentException(LENGTH_ERROR);
         }
 
-        int[] cardDigits = splitIntoDigits(cardNum);
-        this.bankId = extractBankId(cardDigits);
-        this.accountId = extractAccountId(cardDigits);
-        this.checkDigit = cardDigits[CARD_LENGTH - 1]; // Last digit is the check digit
+        this.bankId = cardNum / BANK_ID_DIVISOR;
+        this.accountId = (cardNum / 10) % ACCOUNT_ID_MODULUS;
+        this.checkDigit = cardNum % 10; // Last digit is the check digit
 
         // Validate the card number using Luhn's algorithm
-        if (!verifyCheckDigit(cardNum)) {
+        if (decoded == INVALID_CHECK_DIGIT) {
             throw new IllegalArgumentException("Check digit, " + checkDigit +
                     ", for card with number: " + cardNum + " is invalid");
         }
@@ -49,72 +70,71 @@ public class CreditCard {
         return accountId;
     }
 
-    private static int digitsToInt(int[] digits) {
-        int number = 0;
-        for (int digit : digits) {
-            number = number * 10 + digit;
+    /**
+     * Validates and decodes a card number in a single arithmetic pass over its digits,
+     * without allocating or throwing. This is the fast path for callers that only need
+     * the identifiers, or that expect many invalid numbers.
+     *
+     * A valid card decodes to its bank ID in the upper 32 bits and its account ID in the
+     * lower 32 bits; use bankId and accountId to unpack it. An invalid card decodes to the
+     * negative INVALID_LENGTH or INVALID_CHECK_DIGIT status.
+     *
+     * @param cardNum The card number to decode.
+     * @return the packed bank and account IDs, or a negative status if the card is invalid.
+     */
+    public static long decode(final int cardNum) {
+        if (cardNum < MIN_CARD_NUMBER || cardNum > MAX_CARD_NUMBER) {
+            return INVALID_LENGTH;
         }
-        return number;
-    }
 
-    private static int extractBankId(int[] cardNums) {
-        int[] bankIdDigits = new int[BANK_ID_LENGTH];
-        System.arraycopy(cardNums, 0, bankIdDigits, 0, BANK_ID_LENGTH);
-        return digitsToInt(bankIdDigits);
-    }
+        // Luhn's algorithm, reading digits from the right and doubling every second one
+        int remaining = cardNum;
+        int sum = 0;
+        for (int i = 0; i < CARD_LENGTH; i += 2) {
+            sum += remaining % 10;
+            remaining /= 10;
+            final int doubled = (remaining % 10) * 2;
+            sum += doubled > 9 ? doubled - 9 : doubled;
+            remaining /= 10;
+        }
+        if (sum % 10 != 0) {
+            return INVALID_CHECK_DIGIT;
+        }
 
-    private static int extractAccountId(int[] cardNums) {
-        int[] accountIdDigits = new int[ACCOUNT_ID_LENGTH];
-        System.arraycopy(cardNums, BANK_ID_LENGTH, accountIdDigits, 0, ACCOUNT_ID_LENGTH);
-        return digitsToInt(accountIdDigits);
+        final int bankId = cardNum / BANK_ID_DIVISOR;
+        final int accountId = (cardNum / 10) % ACCOUNT_ID_MODULUS;
+        return ((long) bankId << 32) | accountId;
     }
 
-    private static int[] splitIntoDigits(final int num) {
-        int length = numDigits(num);
-        int[] digits = new int[length];
-        int temp = num;
-        for (int i = length - 1; i >= 0; i--) {
-            digits[i] = temp % 10;
-            temp /= 10;
-        }
-        return digits;
+    /**
+     * @param decoded a value returned by decode.
+     * @return true if the decoded card number was valid.
+     */
+    public static boolean isValid(final long decoded) {
+        return decoded >= 0;
     }
 
-    private static int numDigits(final int num) {
-        return (int) (Math.floor(Math.log10(num)) + 1);
+    /**
+     * @param decoded a valid value returned by decode.
+     * @return the bank ID of the decoded card.
+     */
+    public static int bankId(final long decoded) {
+        return (int) (decoded >>> 32);
     }
 
     /**
-     * Verifies the card number's validity using Luhn's algorithm.
-     *
-     * @param cardNum The card number as an integer.
-     * @return True if the check digit is valid, false otherwise.
+     * @param decoded a valid value returned by decode.
+     * @return the account ID of the decoded card.
      */
-    private boolean verifyCheckDigit(final int cardNum) {
-        String cardNumber = String.valueOf(cardNum);
-        int sum = 0;
-        boolean alternate = false;
-
-        // Loop through the card number's digits in reverse order
-        for (int i = cardNumber.length() - 1; i >= 0; i--) {
-            int n;
-            try {
-                n = Integer.parseInt(cardNumber.substring(i, i + 1));
-            } catch (NumberFormatException e) {
-                return false; // Non-numeric character found
-            }
-
-            // Double every second digit
-            if (alternate) {
-                n *= 2;
-                if (n > 9) {
-                    n -= 9; // Correct the digit sum if greater than 9
-                }
-            }
-            sum += n; // Accumulate the sum
-            alternate = !alternate; // Toggle the alternate flag
-        }
+    public static int accountId(final long decoded) {
+        return (int) decoded;
+    }
 
-        return (sum % 10 == 0); // Check if the total modulo 10 is zero
+    private static int pow10(final int exponent) {
+        int value = 1;
+        for (int i = 0; i < exponent; i++) {
+            value *= 10;
+        }
+        return value;
     }
 }
@@ -0,0 +1,75 @@
+import java.util.Arrays;
+
+/**
+ * The HeapAccountStore class is the AccountStore that keeps keys and balances in long arrays
+ * on the Java heap. Slots are grouped into fixed-size segments of SEGMENT_SIZE, and the store
+ * grows by adding segments: existing segments are never copied or moved, so growing it costs
+ * the same however many accounts it already holds. Each new segment directory is published
+ * through a volatile field before any slot in it is handed out.
+ */
+public final class HeapAccountStore implements AccountStore {
+    private static final int SEGMENT_BITS = 16;
+
+    /**
+     * Number of slots in each segment.
+     */
+    public static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private volatile long[][] keySegments;
+    private volatile long[][] balanceSegments;
+
+    /**
+     * Constructor that creates a store with room for at least the given number of slots.
+     *
+     * @param capacity the number of slots to make room for.
+     */
+    public HeapAccountStore(final int capacity) {
+        keySegments = new long[0][];
+        balanceSegments = new long[0][];
+        ensureCapacity(capacity);
+    }
+
+    @Override
+    public int capacity() {
+        return keySegments.length << SEGMENT_BITS;
+    }
+
+    @Override
+    public void ensureCapacity(final int capacity) {
+        final int segments = (int) (((long) capacity + SEGMENT_MASK) >>> SEGMENT_BITS);
+        final long[][] keys = keySegments;
+        if (segments <= keys.length) {
+            return;
+        }
+        final long[][] newKeys = Arrays.copyOf(keys, segments);  // Copies segment references only
+        final long[][] newBalances = Arrays.copyOf(balanceSegments, segments);
+        for (int i = keys.length; i < segments; i++) {
+            newKeys[i] = new long[SEGMENT_SIZE];
+            newBalances[i] = new long[SEGMENT_SIZE];
+        }
+        balanceSegments = newBalances;
+        keySegments = newKeys;
+    }
+
+    @Override
+    public long key(final int slot) {
+        return keySegments[slot >>> SEGMENT_BITS][slot & SEGMENT_MASK];
+    }
+
+    @Override
+    public void setKey(final int slot, final long accountKey) {
+        keySegments[slot >>> SEGMENT_BITS][slot & SEGMENT_MASK] = accountKey;
+    }
+
+    @Override
+    public long balance(final int slot) {
+        return balanceSegments[slot >>> SEGMENT_BITS][slot & SEGMENT_MASK];
+    }
+
+    @Override
+    public void setBalance(final int slot, final long balance) {
+        balanceSegments[slot >>> SEGMENT_BITS][slot & SEGMENT_MASK] = balance;
+    }
+}
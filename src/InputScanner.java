@@ -6,16 +6,21 @@ import java.util.Scanner;
  * It ensures that newline characters are properly handled after
  * reading integers and doubles to avoid input issues.
  *
- * This class provides three methods:
+ * This class provides four methods:
  * - nextLine(): Reads a full line of text input.
  * - nextIntLine(): Reads an integer and consumes the remaining newline.
  * - nextDoubleLine(): Reads a double and consumes the remaining newline.
+ * - nextMoneyLine(): Reads an amount of money in minor units and consumes the remaining newline.
  *
  * Usage:
  *   InputScanner scanner = new InputScanner(new Scanner(System.in));
  *   int number = scanner.nextIntLine();
  *   String text = scanner.nextLine();
  *
+ * Subclasses such as BufferedInputScanner may read from another source by using the
+ * protected constructor and overriding all four methods. They may also override
+ * nextLineView and hasBufferedLine, which pipelined ATM sessions use to read commands
+ * without building Strings and to tell when the client is waiting for a response.
  */
 public class InputScanner {
     private final Scanner input;
@@ -29,6 +34,14 @@ public class InputScanner {
         this.input = input;
     }
 
+    /**
+     * Constructs an InputScanner without a Scanner, for subclasses that read their input
+     * some other way.
+     */
+    protected InputScanner() {
+        this.input = null;
+    }
+
     /**
      * Reads and returns the next line of text input.
      *
@@ -38,6 +51,26 @@ public class InputScanner {
         return input.nextLine();
     }
 
+    /**
+     * Reads the next line of text input and returns it as a CharSequence that may only be used
+     * until the next read. The default implementation returns nextLine.
+     *
+     * @return the next line of text input.
+     */
+    public CharSequence nextLineView() {
+        return nextLine();
+    }
+
+    /**
+     * Tells whether a whole line has already been read from the source, so that the next read
+     * will not block. The default implementation cannot tell and returns false.
+     *
+     * @return true if the next line is already buffered.
+     */
+    public boolean hasBufferedLine() {
+        return false;
+    }
+
     /**
      * Reads and returns the next integer from input and consumes the newline character.
      *
@@ -57,4 +90,15 @@ public class InputScanner {
     public double nextDoubleLine() {
         return Double.parseDouble(input.nextLine());
     }
+
+    /**
+     * Reads the next amount of money, such as "12.50", and consumes the newline character.
+     *
+     * @return the amount in minor units, such as 1250.
+     * @throws NumberFormatException if the input is not a valid amount.
+     * @see Money#parse(CharSequence)
+     */
+    public long nextMoneyLine() {
+        return Money.parse(input.nextLine());
+    }
 }
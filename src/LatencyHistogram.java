@@ -0,0 +1,158 @@
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram class records durations in nanoseconds into log-linear buckets, so
+ * that percentiles can be read without keeping every sample. It is lock-free and may be
+ * recorded to from many threads at once.
+ *
+ * Values below 2^SUB_BUCKET_BITS each have their own bucket. Above that, every power of two
+ * is split into 2^SUB_BUCKET_BITS equal buckets, so a reported percentile is never more than
+ * about 3% above the true value, whatever its magnitude.
+ *
+ * Reports print histograms as a latency table in microseconds: writeTableHeader once, then
+ * writeTableRow for each step.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one duration. Negative durations are recorded as zero. Recording does not
+     * allocate.
+     *
+     * @param nanos the duration in nanoseconds.
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        total.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);  // Only contend when a new maximum is seen
+        }
+    }
+
+    /**
+     * Adds every sample recorded in another histogram to this one.
+     *
+     * @param other the histogram to add.
+     */
+    public void add(final LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            final long n = other.counts.get(i);
+            if (n != 0) {
+                counts.addAndGet(i, n);
+            }
+        }
+        total.add(other.total.sum());
+        max.accumulateAndGet(other.max.get(), Math::max);
+    }
+
+    /**
+     * @return the number of durations recorded.
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);  // Summed on read to keep recording to one counter update
+        }
+        return count;
+    }
+
+    /**
+     * @return the mean duration in nanoseconds, or 0 if nothing was recorded.
+     */
+    public double getMean() {
+        final long n = getCount();
+        return n == 0 ? 0 : total.sum() / (double) n;
+    }
+
+    /**
+     * @return the longest duration recorded, in nanoseconds.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the duration that the given percentage of samples did not exceed, rounded up to
+     * the upper bound of its bucket and capped at the longest duration recorded.
+     *
+     * @param percentile the percentile, from 0 to 100.
+     * @return the duration in nanoseconds, or 0 if nothing was recorded.
+     */
+    public long getPercentile(final double percentile) {
+        long remaining = (long) Math.ceil(getCount() * Math.min(100, Math.max(0, percentile)) / 100);
+        remaining = Math.max(1, remaining);
+        for (int i = 0; i < BUCKETS; i++) {
+            remaining -= counts.get(i);
+            if (remaining <= 0) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Writes the header of a latency table whose rows are written by writeTableRow.
+     *
+     * @param out the stream to write to.
+     */
+    public static void writeTableHeader(final PrintStream out) {
+        out.printf("%-10s %12s %10s %10s %10s %10s %10s %10s%n",
+                "step", "count", "mean us", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+    }
+
+    /**
+     * Writes this histogram as one row of a latency table, in microseconds. Nothing is written
+     * if no duration was recorded, so a table lists only the steps that occurred.
+     *
+     * @param out the stream to write to.
+     * @param step the name of the step the durations were recorded for.
+     */
+    public void writeTableRow(final PrintStream out, final String step) {
+        final long count = getCount();
+        if (count == 0) {
+            return;
+        }
+        out.printf("%-10s %,12d %10.2f %10.2f %10.2f %10.2f %10.2f %10.2f%n", step, count,
+                getMean() / 1e3,
+                getPercentile(50) / 1e3,
+                getPercentile(90) / 1e3,
+                getPercentile(99) / 1e3,
+                getPercentile(99.9) / 1e3,
+                getMax() / 1e3);
+    }
+
+    /**
+     * Maps a duration to its bucket: the position of its highest set bit selects the power of
+     * two, and the next SUB_BUCKET_BITS bits select the bucket within it.
+     */
+    private static int bucket(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return the largest duration that falls into the given bucket.
+     */
+    private static long upperBound(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        final long lowest = ((long) (SUB_BUCKETS | (bucket & (SUB_BUCKETS - 1)))) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -1,23 +1,205 @@
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
 
 /**
  * The Main class is the entry point for the ATM system. It initializes the system
  * by creating instances of BankMapping, AccountMapping, and ATM, and starts the
  * interaction with the user.
+ *
+ * Options:
+ *   --server PORT   host many terminal sessions on a loopback TCP port instead of
+ *                   running a single session on the console.
+ *   --journal FILE  log every balance change to a write-ahead journal, replaying any
+ *                   changes already in it on startup.
+ *   --durability M  when journaled changes are durable: sync, group (default) or async.
+ *   --snapshot FILE load banks and accounts from a binary snapshot (see Snapshot)
+ *                   instead of reading them from the input.
+ *   --reader R      how input is read: scanner (default, java.util.Scanner) or
+ *                   buffered (BufferedInputScanner, for large or scripted input).
+ *   --metrics SECS  collect AtmMetrics, export them over JMX and write a report to
+ *                   standard error every SECS seconds (0 for only when the console
+ *                   session ends).
+ *   --daily-limit AMOUNT
+ *                   refuse withdrawals that take an account's total for the day
+ *                   above AMOUNT.
+ *   --velocity N/SECS
+ *                   refuse a withdrawal if the account already made N withdrawals
+ *                   in the last SECS seconds.
+ *   --history CHUNKS
+ *                   record transaction history, keeping the newest CHUNKS chunks in
+ *                   memory (each TransactionHistory.CHUNK_SIZE transactions). Off unless
+ *                   given, as every recorded transaction takes the history's one lock.
+ *   --history-spill FILE
+ *                   move older history chunks to FILE instead of dropping them.
+ *   --history-spill-chunks N
+ *                   keep at most N chunks in the spill file (default 256), dropping the
+ *                   oldest beyond that so that the file stops growing.
+ *   --store S       where account balances are kept: heap (default) or off-heap
+ *                   (direct memory, for tens of millions of accounts).
+ *   --pipelined     for scripted input: read commands with the buffered reader and
+ *                   write responses in one batch once every buffered command has
+ *                   been handled, instead of flushing at every prompt.
+ *   --deltas DIR    apply bank and account changes from delta files written to DIR
+ *                   while sessions run (see Reloader). Deltas applied in earlier runs
+ *                   are applied again on startup, before the journal is replayed.
  */
 public class Main {
-    public static void main(String[] args) {
-        final InputScanner input = new InputScanner(new Scanner(System.in));
+    private static final int DEFAULT_HISTORY_SPILL_CHUNKS = 256;
+    private static final int PIPELINE_BUFFER_SIZE = 64 * 1024;
 
-        // Read the number of banks and accounts
-        final int numBanksAccounts = input.nextIntLine();
+    public static void main(String[] args) throws IOException, JMException {
+        int serverPort = -1;
+        Path journalPath = null;
+        Path snapshotPath = null;
+        boolean bufferedReader = false;
+        int metricsSeconds = -1;
+        long dailyLimit = Long.MAX_VALUE;
+        int maxWithdrawals = 0;
+        long velocityMillis = 0;
+        int historyChunks = 0;
+        Path historySpill = null;
+        int historySpillChunks = DEFAULT_HISTORY_SPILL_CHUNKS;
+        Path deltaDirectory = null;
+        AccountStore.Kind storeKind = AccountStore.Kind.HEAP;
+        boolean pipelined = false;
+        TransactionJournal.Durability durability = TransactionJournal.Durability.GROUP;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--server" -> serverPort = Integer.parseInt(args[++i]);
+                case "--journal" -> journalPath = Path.of(args[++i]);
+                case "--durability" -> durability = TransactionJournal.Durability.parse(args[++i]);
+                case "--snapshot" -> snapshotPath = Path.of(args[++i]);
+                case "--reader" -> bufferedReader = switch (args[++i]) {
+                    case "scanner" -> false;
+                    case "buffered" -> true;
+                    default -> throw new IllegalArgumentException("Unknown reader: " + args[i]);
+                };
+                case "--metrics" -> metricsSeconds = Integer.parseInt(args[++i]);
+                case "--daily-limit" -> dailyLimit = Money.parse(args[++i]);
+                case "--history" -> historyChunks = Integer.parseInt(args[++i]);
+                case "--history-spill" -> historySpill = Path.of(args[++i]);
+                case "--history-spill-chunks" -> historySpillChunks = Integer.parseInt(args[++i]);
+                case "--deltas" -> deltaDirectory = Path.of(args[++i]);
+                case "--store" -> storeKind = AccountStore.Kind.parse(args[++i]);
+                case "--pipelined" -> pipelined = true;
+                case "--velocity" -> {
+                    final String[] rule = args[++i].split("/", 2);
+                    if (rule.length != 2) {
+                        throw new IllegalArgumentException("Velocity must be N/SECS: " + args[i]);
+                    }
+                    maxWithdrawals = Integer.parseInt(rule[0]);
+                    velocityMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(rule[1]));
+                }
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
 
-        // Initialize mappings for banks and accounts
-        BankMapping bankMapping = new BankMapping(numBanksAccounts, input);
-        AccountMapping accountMapping = new AccountMapping(numBanksAccounts, input);
+        final InputScanner input = bufferedReader || pipelined  // Pipelining needs to see what is buffered
+                ? new BufferedInputScanner(System.in)
+                : new InputScanner(new Scanner(System.in));
+
+        BankMapping bankMapping;
+        AccountMapping accountMapping;
+        if (snapshotPath != null) {
+            // Map the prebuilt binary image instead of parsing text
+            final Snapshot snapshot = Snapshot.load(snapshotPath, storeKind);
+            bankMapping = snapshot.getBankMapping();
+            accountMapping = snapshot.getAccountMapping();
+        } else {
+            // Read the banks, then the accounts held at those banks
+            final int numBanks = input.nextIntLine();
+            bankMapping = new BankMapping(numBanks, input);
+            final int numAccounts = input.nextIntLine();
+            accountMapping = new AccountMapping(numAccounts, input, storeKind);
+        }
+
+        // Restore the banks and accounts changed by deltas before the last shutdown
+        final Reloader reloader = deltaDirectory != null ? new Reloader(bankMapping, accountMapping) : null;
+        if (reloader != null) {
+            reloader.restore(deltaDirectory, System.err);
+        }
+
+        // Recover balance changes made before the last shutdown and log new ones
+        TransactionJournal journal = null;
+        if (journalPath != null) {
+            journal = TransactionJournal.open(journalPath, durability);
+            final int recovered = journal.getRecoveredCount();
+            final int skipped = recovered - journal.replay(accountMapping);
+            if (skipped > 0) {
+                System.err.println("Journal replay skipped " + skipped + " of " + recovered
+                        + " records for accounts that no longer exist");
+            }
+            accountMapping.attachJournal(journal);
+        }
+
+        if (dailyLimit != Long.MAX_VALUE || maxWithdrawals > 0) {
+            accountMapping.attachLimits(new WithdrawalLimits(accountMapping.size(),
+                    dailyLimit, maxWithdrawals, velocityMillis));
+        }
+
+        final TransactionHistory history = historyChunks > 0
+                ? new TransactionHistory(historyChunks, historySpill, historySpillChunks)
+                : null;
+
+        if (reloader != null) {
+            // Apply the deltas written while down before any session starts, then watch for more
+            reloader.applyPending(deltaDirectory, System.err);
+            reloader.watch(deltaDirectory, System.err);
+        }
+
+        AtmMetrics metrics = null;
+        if (metricsSeconds >= 0) {
+            metrics = new AtmMetrics();
+            metrics.registerMBean();
+            if (metricsSeconds > 0) {
+                metrics.startReporting(System.err, metricsSeconds, TimeUnit.SECONDS);
+            }
+        }
+
+        if (serverPort >= 0) {
+            // Serve remote terminals that all share the same mappings
+            final AtmServer server = new AtmServer(bankMapping, accountMapping, serverPort);
+            if (metrics != null) {
+                server.attachListener(metrics);
+            }
+            if (history != null) {
+                server.attachHistory(history);
+            }
+            server.setPipelined(pipelined);
+            server.serve();
+            return;
+        }
 
         // Create the ATM instance and start the system
-        ATM atm = new ATM(bankMapping, accountMapping, input);
+        final PrintStream output = pipelined
+                ? new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), PIPELINE_BUFFER_SIZE), false)
+                : System.out;
+        ATM atm = new ATM(bankMapping, accountMapping, input, output);
+        atm.setPipelined(pipelined);
+        if (metrics != null) {
+            atm.attachListener(metrics);
+        }
+        if (history != null) {
+            atm.attachHistory(history);
+        }
         atm.start();
+
+        if (metrics != null) {
+            metrics.write(System.err);
+        }
+
+        if (journal != null) {
+            journal.close();
+        }
+        if (history != null) {
+            history.close();
+        }
     }
 }
@@ -0,0 +1,102 @@
+/**
+ * The Money class converts between decimal amounts and the fixed-point representation used
+ * for balances: a long count of minor units (cents). Keeping money in whole minor units makes
+ * every deposit and withdrawal exact, unlike binary floating point.
+ *
+ * Amounts are written as an optional sign, whole units, and optionally a decimal point
+ * followed by at most MINOR_DIGITS digits, for example "12", "12.5" or "-0.05".
+ * Formatting always prints exactly MINOR_DIGITS decimal places.
+ */
+public final class Money {
+    /**
+     * Number of decimal places in an amount.
+     */
+    public static final int MINOR_DIGITS = 2;
+
+    /**
+     * Number of minor units in one whole unit.
+     */
+    public static final long MINOR_PER_UNIT = 100;
+
+    private Money() {
+    }
+
+    /**
+     * Parses a decimal amount into minor units without going through a double or
+     * allocating.
+     *
+     * @param s the amount, such as "12.50".
+     * @return the amount in minor units, such as 1250.
+     * @throws NumberFormatException if the text is not an amount, has more than MINOR_DIGITS
+     *         decimal places, or does not fit in a long.
+     */
+    public static long parse(final CharSequence s) {
+        final int length = s.length();
+        int i = 0;
+        boolean negative = false;
+        if (i < length && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+        // Accumulate negatively so that the most negative amount parses without overflow
+        long result = 0;
+        int digits = 0;
+        int minorDigits = -1;  // -1 until the decimal point is seen
+        for (; i < length; i++) {
+            final char c = s.charAt(i);
+            if (c == '.' && minorDigits < 0) {
+                minorDigits = 0;
+                continue;
+            }
+            final int digit = c - '0';
+            if (digit < 0 || digit > 9 || minorDigits == MINOR_DIGITS) {
+                throw invalidAmount(s);
+            }
+            if (result < (Long.MIN_VALUE + digit) / 10) {
+                throw invalidAmount(s);
+            }
+            result = result * 10 - digit;
+            digits++;
+            if (minorDigits >= 0) {
+                minorDigits++;
+            }
+        }
+        if (digits == 0) {
+            throw invalidAmount(s);
+        }
+        for (int scale = Math.max(0, minorDigits); scale < MINOR_DIGITS; scale++) {
+            if (result < Long.MIN_VALUE / 10) {
+                throw invalidAmount(s);
+            }
+            result *= 10;  // Pad missing decimal places, so "12.5" becomes 1250
+        }
+        if (!negative && result == Long.MIN_VALUE) {
+            throw invalidAmount(s);
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Formats an amount in minor units as a decimal string with MINOR_DIGITS decimal places.
+     *
+     * @param minorUnits the amount in minor units, such as -5.
+     * @return the formatted amount, such as "-0.05".
+     */
+    public static String format(final long minorUnits) {
+        final long units = minorUnits / MINOR_PER_UNIT;
+        final long minor = Math.abs(minorUnits % MINOR_PER_UNIT);
+        final StringBuilder sb = new StringBuilder(24);
+        if (minorUnits < 0) {
+            sb.append('-');
+        }
+        sb.append(Math.abs(units)).append('.');
+        for (long scale = MINOR_PER_UNIT / 10; scale > minor && scale > 1; scale /= 10) {
+            sb.append('0');  // Leading zeros of the minor part
+        }
+        return sb.append(minor).toString();
+    }
+
+    private static NumberFormatException invalidAmount(final CharSequence s) {
+        return new NumberFormatException("For input string: \"" + s + "\"");
+    }
+}
@@ -6,9 +6,19 @@
  *
  * Subclasses should represent specific exceptions such as NoSuchAccount or NoSuchBank,
  * providing meaningful messages when the requested entity does not exist.
+ *
+ * Failed lookups are routine (mistyped cards, closed accounts), so these exceptions do not
+ * capture a stack trace and their message is only built when it is asked for.
  */
 public abstract class NoSuchException extends Exception {
 
+    /**
+     * Constructor that creates the exception without a stack trace or suppressed exceptions.
+     */
+    protected NoSuchException() {
+        super(null, null, false, false);
+    }
+
     /**
      * Returns the name of the entity that could not be found.
      * Subclasses must override this method to return the appropriate entity name.
@@ -35,4 +45,12 @@ public abstract class NoSuchException extends Exception {
     public String toString() {
         return "No Such " + getName() + " With Id: " + getId();
     }
+
+    /**
+     * @return the same message as toString.
+     */
+    @Override
+    public String getMessage() {
+        return toString();
+    }
 }
@@ -0,0 +1,97 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * The OffHeapAccountStore class is the AccountStore that keeps keys and balances in direct
+ * ByteBuffers, outside the Java heap. The heap then holds only the buffers' small headers, so
+ * tens of millions of accounts neither enlarge the heap nor give the collector anything to
+ * copy or mark. Buffers are allocated in segments of SEGMENT_SIZE slots, like
+ * HeapAccountStore, so the store grows without copying.
+ *
+ * Every access goes through a VarHandle view of the buffer in native byte order with opaque
+ * access: each long is read and written whole, which AccountMapping's optimistic reads rely
+ * on, without the fences of volatile access. Ordering between threads comes from the stripe
+ * locks, as for the heap store.
+ *
+ * The memory counts against -XX:MaxDirectMemorySize, which defaults to the maximum heap
+ * size, and is returned when the store becomes unreachable.
+ */
+public final class OffHeapAccountStore implements AccountStore {
+    private static final int SEGMENT_BITS = 16;
+
+    /**
+     * Number of slots in each segment.
+     */
+    public static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private volatile ByteBuffer[] keySegments;
+    private volatile ByteBuffer[] balanceSegments;
+
+    /**
+     * Constructor that creates a store with room for at least the given number of slots.
+     *
+     * @param capacity the number of slots to make room for.
+     * @throws OutOfMemoryError if the direct memory limit does not leave room.
+     */
+    public OffHeapAccountStore(final int capacity) {
+        keySegments = new ByteBuffer[0];
+        balanceSegments = new ByteBuffer[0];
+        ensureCapacity(capacity);
+    }
+
+    @Override
+    public int capacity() {
+        return keySegments.length << SEGMENT_BITS;
+    }
+
+    @Override
+    public void ensureCapacity(final int capacity) {
+        final int segments = (int) (((long) capacity + SEGMENT_MASK) >>> SEGMENT_BITS);
+        final ByteBuffer[] keys = keySegments;
+        if (segments <= keys.length) {
+            return;
+        }
+        final ByteBuffer[] newKeys = Arrays.copyOf(keys, segments);  // Copies segment references only
+        final ByteBuffer[] newBalances = Arrays.copyOf(balanceSegments, segments);
+        for (int i = keys.length; i < segments; i++) {
+            newKeys[i] = ByteBuffer.allocateDirect(SEGMENT_SIZE * Long.BYTES);  // Zeroed, and 8-byte aligned
+            newBalances[i] = ByteBuffer.allocateDirect(SEGMENT_SIZE * Long.BYTES);
+        }
+        balanceSegments = newBalances;
+        keySegments = newKeys;
+    }
+
+    /**
+     * @return the number of bytes of direct memory the store holds.
+     */
+    public long getOffHeapBytes() {
+        return 2L * capacity() * Long.BYTES;
+    }
+
+    @Override
+    public long key(final int slot) {
+        return (long) LONGS.getOpaque(keySegments[slot >>> SEGMENT_BITS], (slot & SEGMENT_MASK) << 3);
+    }
+
+    @Override
+    public void setKey(final int slot, final long accountKey) {
+        LONGS.setOpaque(keySegments[slot >>> SEGMENT_BITS], (slot & SEGMENT_MASK) << 3, accountKey);
+    }
+
+    @Override
+    public long balance(final int slot) {
+        return (long) LONGS.getOpaque(balanceSegments[slot >>> SEGMENT_BITS], (slot & SEGMENT_MASK) << 3);
+    }
+
+    @Override
+    public void setBalance(final int slot, final long balance) {
+        LONGS.setOpaque(balanceSegments[slot >>> SEGMENT_BITS], (slot & SEGMENT_MASK) << 3, balance);
+    }
+}
@@ -0,0 +1,240 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.regex.Pattern;
+
+/**
+ * The Reloader class applies changes to the banks and accounts while sessions are running,
+ * without stopping or pausing them.
+ *
+ * Changes are read from delta files in the same one-field-per-line format as the startup
+ * input: the number of changes, then each change as an operation followed by its fields.
+ *
+ *   add-bank        bank ID, bank name
+ *   rename-bank     bank ID, new bank name
+ *   remove-bank     bank ID
+ *   add-account     bank ID, account ID, opening balance
+ *   remove-account  bank ID, account ID
+ *
+ * For example, a delta that opens a bank with one account:
+ *   2
+ *   add-bank
+ *   56
+ *   Wells Fargo
+ *   add-account
+ *   56
+ *   11111
+ *   20.00
+ *
+ * Each change is applied on its own as soon as it is read, through BankMapping's
+ * copy-on-write table and AccountMapping's addAccount and removeAccount, so sessions see
+ * every change whole. A delta is not applied as one unit: if a change fails, the changes
+ * before it stay applied.
+ *
+ * applyPending applies every "*.delta" file in a directory and renames it to "*.applied", or
+ * to "*.failed" if a change in it was refused, prefixed with a sequence number that records
+ * the order it was applied in. watch does the same for each delta added to the directory
+ * later. Write a delta under another name and move it into place, so that it is never read
+ * half written.
+ *
+ * The renamed files are what makes the changes survive a restart: restore applies them again,
+ * in sequence order, over the startup input or snapshot. A failed delta fails again at the same
+ * change, so the changes before it are restored too. Call restore before
+ * TransactionJournal.replay, so that the journaled balances of added accounts have an account
+ * to go to. AccountMapping journals the opening balance of each account added while a journal
+ * is attached, so an account that is removed and added again is replayed with the right balance.
+ */
+public final class Reloader {
+    private static final String DELTA_SUFFIX = ".delta";
+    private static final String APPLIED_SUFFIX = ".applied";
+    private static final String FAILED_SUFFIX = ".failed";
+
+    /**
+     * Names of deltas already applied: a sequence number, a dash, the delta's own name and
+     * APPLIED_SUFFIX or FAILED_SUFFIX.
+     */
+    private static final Pattern DONE_NAME = Pattern.compile("(\\d{8})-.*(\\.applied|\\.failed)");
+
+    private final BankMapping bankMapping;
+    private final AccountMapping accountMapping;
+    private int sequence = -1;  // Sequence number of the last delta applied, once known
+
+    /**
+     * Constructor for the Reloader class.
+     *
+     * @param bankMapping the banks to change.
+     * @param accountMapping the accounts to change.
+     */
+    public Reloader(final BankMapping bankMapping, final AccountMapping accountMapping) {
+        this.bankMapping = bankMapping;
+        this.accountMapping = accountMapping;
+    }
+
+    /**
+     * Reads the changes of one delta from the input and applies them in order.
+     *
+     * @param input the InputScanner to read the delta from.
+     * @return the number of changes applied.
+     * @throws NoSuchException if a change renames or removes a bank or account that does not exist.
+     * @throws IllegalArgumentException if an operation is unknown, or a bank or account to add
+     *                                  already exists or is invalid.
+     */
+    public int apply(final InputScanner input) throws NoSuchException {
+        final int numChanges = input.nextIntLine();  // Read number of changes
+        for (int i = 0; i < numChanges; i++) {
+            final String operation = input.nextLine();  // Read operation
+            switch (operation) {
+                case "add-bank" -> bankMapping.addBank(input.nextIntLine(), input.nextLine());
+                case "rename-bank" -> bankMapping.renameBank(input.nextIntLine(), input.nextLine());
+                case "remove-bank" -> bankMapping.removeBank(input.nextIntLine());
+                case "add-account" -> accountMapping.addAccount(input.nextIntLine(), input.nextIntLine(),
+                        input.nextMoneyLine());
+                case "remove-account" -> accountMapping.removeAccount(input.nextIntLine(), input.nextIntLine());
+                default -> throw new IllegalArgumentException("Unknown delta operation: " + operation);
+            }
+        }
+        return numChanges;
+    }
+
+    /**
+     * Applies the changes in a delta file.
+     *
+     * @param file the delta file.
+     * @return the number of changes applied.
+     * @throws IOException if the file cannot be opened.
+     * @throws NoSuchException if a change renames or removes a bank or account that does not exist.
+     */
+    public int apply(final Path file) throws IOException, NoSuchException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return apply(new BufferedInputScanner(in));
+        }
+    }
+
+    /**
+     * Applies again, in the order they were first applied, the deltas that an earlier run
+     * applied from the directory. Call this on startup, before TransactionJournal.replay.
+     *
+     * @param directory the delta directory.
+     * @param log the stream to report deltas that no longer apply to.
+     * @return the number of deltas applied again.
+     * @throws IOException if the directory or a delta cannot be read.
+     */
+    public int restore(final Path directory, final PrintStream log) throws IOException {
+        final List<Path> done = listDone(directory);
+        for (Path delta : done) {
+            try {
+                apply(delta);
+            } catch (NoSuchException | IllegalArgumentException | NoSuchElementException e) {
+                if (delta.getFileName().toString().endsWith(APPLIED_SUFFIX)) {
+                    log.println("Could not restore " + delta.getFileName() + ": " + e);  // The startup input has changed
+                }
+            }
+        }
+        return done.size();
+    }
+
+    /**
+     * Starts a daemon thread that applies the delta files already in the directory, in order
+     * of name, and then each one that is added to it.
+     *
+     * @param directory the directory to watch.
+     * @param log the stream to report each applied or failed delta to.
+     * @return the watching thread, which stops when interrupted.
+     * @throws IOException if the directory cannot be watched.
+     */
+    public Thread watch(final Path directory, final PrintStream log) throws IOException {
+        final WatchService watcher = directory.getFileSystem().newWatchService();
+        directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        final Thread thread = new Thread(() -> {
+            try (watcher) {
+                applyPending(directory, log);  // Deltas written before the watch started
+                while (true) {
+                    final WatchKey key = watcher.take();
+                    key.pollEvents();  // Which files changed does not matter; the directory is rescanned
+                    applyPending(directory, log);
+                    if (!key.reset()) {
+                        log.println("Delta directory is no longer accessible: " + directory);
+                        return;
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // Watching stopped
+            } catch (IOException e) {
+                log.println("Stopped watching " + directory + ": " + e);
+            }
+        }, "delta-reloader");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Applies every delta file in the directory, in order of name, and renames each one once
+     * it has been applied or refused. Call this on startup, after TransactionJournal.replay,
+     * so that the deltas written while the system was down are in place before sessions start.
+     *
+     * @param directory the delta directory.
+     * @param log the stream to report each applied or failed delta to.
+     * @throws IOException if the directory cannot be read, a delta cannot be renamed, or the
+     *                     journal attached to the accounts has failed; the delta being applied
+     *                     is then left in place.
+     */
+    public synchronized void applyPending(final Path directory, final PrintStream log) throws IOException {
+        if (sequence < 0) {
+            final List<Path> done = listDone(directory);
+            sequence = done.isEmpty() ? 0 : sequenceOf(done.get(done.size() - 1));
+        }
+        final List<Path> deltas = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + DELTA_SUFFIX)) {
+            files.forEach(deltas::add);
+        }
+        Collections.sort(deltas);
+        for (Path delta : deltas) {
+            String outcome = APPLIED_SUFFIX;
+            try {
+                final long started = System.nanoTime();
+                final int numChanges = apply(delta);
+                log.printf("Applied %d changes from %s in %.1f ms%n", numChanges, delta.getFileName(),
+                        (System.nanoTime() - started) / 1e6);
+            } catch (NoSuchException | IllegalArgumentException | NoSuchElementException e) {
+                log.println("Refused " + delta.getFileName() + ": " + e);  // Changes before the failing one stay applied
+                outcome = FAILED_SUFFIX;
+            } catch (UncheckedIOException e) {
+                throw e.getCause();  // No later change can be journaled either
+            }
+            final String name = delta.getFileName().toString();
+            final String base = name.substring(0, name.length() - DELTA_SUFFIX.length());
+            Files.move(delta, delta.resolveSibling(String.format("%08d-%s%s", ++sequence, base, outcome)));
+        }
+    }
+
+    /**
+     * Lists the deltas already applied from the directory, in the order they were applied.
+     */
+    private static List<Path> listDone(final Path directory) throws IOException {
+        final List<Path> done = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                file -> DONE_NAME.matcher(file.getFileName().toString()).matches())) {
+            files.forEach(done::add);
+        }
+        done.sort(Comparator.comparingInt(Reloader::sequenceOf));
+        return done;
+    }
+
+    private static int sequenceOf(final Path delta) {
+        return Integer.parseInt(delta.getFileName().toString().substring(0, 8));
+    }
+}
@@ -0,0 +1,275 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * The ReplayEngine class replays recorded terminal traffic through ATM sessions without a
+ * console, to reproduce production load and measure how the banking logic holds up.
+ *
+ * A script is the text a terminal would send: a card number followed by actions and
+ * amounts, one per line. The script is split into card blocks, each ending at "eject" or
+ * "exit", and the blocks are dealt round-robin to a number of sessions that run in parallel
+ * against the same BankMapping and AccountMapping. Each session ends with "exit" after its
+ * last block. Session output goes to a null stream, and prompts are left out unless asked
+ * for, so the replay measures the ATM rather than console I/O.
+ *
+ * Every card insertion and action is timed, and the report gives the overall throughput
+ * and a latency histogram per action.
+ *
+ * Usage:
+ *   java ReplayEngine (--data FILE | --snapshot FILE) [--sessions N] [--prompts] < script.txt
+ */
+public final class ReplayEngine {
+    private final BankMapping bankMapping;
+    private final AccountMapping accountMapping;
+    private final int sessions;
+    private final boolean prompts;
+
+    /**
+     * Constructor for the ReplayEngine class.
+     *
+     * @param bankMapping the BankMapping shared by every session.
+     * @param accountMapping the AccountMapping shared by every session.
+     * @param sessions the number of sessions to run in parallel.
+     * @param prompts whether sessions print their prompts, to include their cost in the measurement.
+     */
+    public ReplayEngine(final BankMapping bankMapping,
+                        final AccountMapping accountMapping,
+                        final int sessions,
+                        final boolean prompts) {
+        if (sessions < 1) {
+            throw new IllegalArgumentException("At least one session is required");
+        }
+        this.bankMapping = bankMapping;
+        this.accountMapping = accountMapping;
+        this.sessions = sessions;
+        this.prompts = prompts;
+    }
+
+    /**
+     * Replays a script and waits for every session to finish.
+     *
+     * @param script the recorded traffic.
+     * @return the throughput and latencies of the replay.
+     * @throws IOException if the script cannot be read.
+     * @throws InterruptedException if interrupted while waiting for the sessions.
+     */
+    public Report replay(final BufferedReader script) throws IOException, InterruptedException {
+        final byte[][] inputs = split(script);
+        final Report report = new Report(sessions);
+        final Thread[] threads = new Thread[sessions];
+        final Thread.Builder builder = Thread.ofPlatform().name("replay-session-", 0);
+        for (int i = 0; i < sessions; i++) {
+            final ATM atm = new ATM(bankMapping, accountMapping,
+                    new BufferedInputScanner(new ByteArrayInputStream(inputs[i])),
+                    new PrintStream(OutputStream.nullOutputStream()), prompts);
+            atm.attachListener(report);
+            threads[i] = builder.unstarted(() -> runSession(atm));
+        }
+
+        final long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /**
+     * Runs one session until it exits or its input runs out.
+     *
+     * @param atm the session to run.
+     */
+    private static void runSession(final ATM atm) {
+        try {
+            atm.start();
+        } catch (NoSuchElementException e) {
+            // The script ended part way through a block; nothing left to replay
+        }
+    }
+
+    /**
+     * Splits a script into card blocks and deals them round-robin to the sessions. Each
+     * block is terminated with "eject" except the last block of a session, which ends
+     * with "exit" so that the session stops once its share of the script is done.
+     *
+     * @param script the recorded traffic.
+     * @return the input of each session.
+     * @throws IOException if the script cannot be read.
+     */
+    private byte[][] split(final BufferedReader script) throws IOException {
+        final ByteArrayOutputStream[] inputs = new ByteArrayOutputStream[sessions];
+        final boolean[] open = new boolean[sessions];  // Session has a block waiting for its terminator
+        for (int i = 0; i < sessions; i++) {
+            inputs[i] = new ByteArrayOutputStream();
+        }
+        final ByteArrayOutputStream block = new ByteArrayOutputStream();
+        int next = 0;
+        String line;
+        while ((line = script.readLine()) != null) {
+            final String command = line.trim();
+            if (!command.equalsIgnoreCase("eject") && !command.equalsIgnoreCase("exit")) {
+                block.writeBytes(line.getBytes(StandardCharsets.UTF_8));
+                block.write('\n');
+            } else if (block.size() > 0) {
+                next = deal(block, inputs, open, next);
+            }
+        }
+        if (block.size() > 0) {
+            deal(block, inputs, open, next);  // Last block had no terminator
+        }
+
+        final byte[][] result = new byte[sessions][];
+        for (int i = 0; i < sessions; i++) {
+            if (open[i]) {
+                inputs[i].writeBytes("exit\n".getBytes(StandardCharsets.US_ASCII));
+            }
+            result[i] = inputs[i].toByteArray();
+        }
+        return result;
+    }
+
+    /**
+     * Appends a block to the input of the given session, terminating that session's previous
+     * block first, and empties the block.
+     *
+     * @return the session to deal the next block to.
+     * @throws IOException never, as both streams are in memory.
+     */
+    private int deal(final ByteArrayOutputStream block, final ByteArrayOutputStream[] inputs,
+                     final boolean[] open, final int session) throws IOException {
+        if (open[session]) {
+            inputs[session].writeBytes("eject\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        block.writeTo(inputs[session]);
+        block.reset();
+        open[session] = true;
+        return session + 1 == sessions ? 0 : session + 1;
+    }
+
+    /**
+     * The Report class collects the timings of a replay as the sessions run, and summarizes
+     * them once it is done.
+     */
+    public static final class Report implements ATM.Listener {
+        private final int sessions;
+        private final LatencyHistogram cards = new LatencyHistogram();
+        private final Map<ATM.Action, LatencyHistogram> actions = new EnumMap<>(ATM.Action.class);
+        private long elapsedNanos;
+
+        private Report(final int sessions) {
+            this.sessions = sessions;
+            for (ATM.Action action : ATM.Action.values()) {
+                actions.put(action, new LatencyHistogram());
+            }
+        }
+
+        @Override
+        public void cardInserted(final long nanos) {
+            cards.record(nanos);
+        }
+
+        @Override
+        public void actionCompleted(final ATM.Action action, final long nanos) {
+            actions.get(action).record(nanos);
+        }
+
+        /**
+         * @return the wall-clock time from starting the first session to the end of the last.
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return the timings of card insertions.
+         */
+        public LatencyHistogram getCardHistogram() {
+            return cards;
+        }
+
+        /**
+         * @param action the action.
+         * @return the timings of the given action.
+         */
+        public LatencyHistogram getHistogram(final ATM.Action action) {
+            return actions.get(action);
+        }
+
+        /**
+         * @return the number of card insertions and actions completed.
+         */
+        public long getSteps() {
+            long steps = cards.getCount();
+            for (LatencyHistogram histogram : actions.values()) {
+                steps += histogram.getCount();
+            }
+            return steps;
+        }
+
+        /**
+         * Writes the throughput and a latency table with one row per step that occurred.
+         *
+         * @param out the stream to write to.
+         */
+        public void write(final PrintStream out) {
+            final long steps = getSteps();
+            out.printf("Replayed %,d steps in %.3f s over %d sessions: %,.0f steps/s%n",
+                    steps, elapsedNanos / 1e9, sessions, steps / (elapsedNanos / 1e9));
+            LatencyHistogram.writeTableHeader(out);
+            cards.writeTableRow(out, "CARD");
+            for (Map.Entry<ATM.Action, LatencyHistogram> entry : actions.entrySet()) {
+                entry.getValue().writeTableRow(out, entry.getKey().name());
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path dataPath = null;
+        Path snapshotPath = null;
+        int sessions = Runtime.getRuntime().availableProcessors();
+        boolean prompts = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--data" -> dataPath = Path.of(args[++i]);
+                case "--snapshot" -> snapshotPath = Path.of(args[++i]);
+                case "--sessions" -> sessions = Integer.parseInt(args[++i]);
+                case "--prompts" -> prompts = true;
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        final BankMapping bankMapping;
+        final AccountMapping accountMapping;
+        if (snapshotPath != null) {
+            final Snapshot snapshot = Snapshot.load(snapshotPath);
+            bankMapping = snapshot.getBankMapping();
+            accountMapping = snapshot.getAccountMapping();
+        } else if (dataPath != null) {
+            try (InputStream in = Files.newInputStream(dataPath)) {
+                final InputScanner input = new BufferedInputScanner(in);
+                bankMapping = new BankMapping(input.nextIntLine(), input);
+                accountMapping = new AccountMapping(input.nextIntLine(), input);
+            }
+        } else {
+            throw new IllegalArgumentException("Either --data or --snapshot is required");
+        }
+
+        final BufferedReader script = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        new ReplayEngine(bankMapping, accountMapping, sessions, prompts).replay(script).write(System.out);
+    }
+}
@@ -0,0 +1,351 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The Snapshot class reads and writes a compact binary image of the bank and account data,
+ * so that a large data set can be loaded without parsing text line by line.
+ *
+ * A snapshot file is laid out as follows, all values little-endian:
+ * - header: magic "ATMS", format version, number of banks, number of accounts.
+ * - bank IDs, sorted, one int each.
+ * - bank name offsets into the string table, one int per bank plus a final end offset.
+ * - padding to an 8-byte boundary.
+ * - account keys (bank ID and account ID, see AccountMapping.key), sorted, one long each.
+ * - account balances in minor units, one long each, in the same order as the account keys.
+ * - string table holding the UTF-8 bank names back to back.
+ *
+ * Loading maps each section of the file with a MappedByteBuffer, at most MAP_WINDOW bytes at
+ * a time so that files over 2 GB load too, and bulk-copies it into the arrays used by
+ * BankMapping and AccountMapping.
+ *
+ * Usage as a converter from the text input format read by Main:
+ *   java Snapshot SNAPSHOT_FILE < input.txt
+ */
+public final class Snapshot {
+    private static final int MAGIC = 0x534D5441;  // "ATMS" when read little-endian
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 16;
+    private static final int MAP_WINDOW = 1 << 30;  // A single mapping cannot exceed 2 GB
+
+    private final BankMapping bankMapping;
+    private final AccountMapping accountMapping;
+
+    private Snapshot(final BankMapping bankMapping, final AccountMapping accountMapping) {
+        this.bankMapping = bankMapping;
+        this.accountMapping = accountMapping;
+    }
+
+    /**
+     * @return the banks loaded from the snapshot.
+     */
+    public BankMapping getBankMapping() {
+        return bankMapping;
+    }
+
+    /**
+     * @return the accounts loaded from the snapshot.
+     */
+    public AccountMapping getAccountMapping() {
+        return accountMapping;
+    }
+
+    /**
+     * Loads a snapshot file.
+     *
+     * @param path the snapshot file.
+     * @return the loaded banks and accounts.
+     * @throws IOException if the file cannot be read or is not a snapshot.
+     */
+    public static Snapshot load(final Path path) throws IOException {
+        return load(path, AccountStore.Kind.HEAP);
+    }
+
+    /**
+     * Loads a snapshot file, keeping the accounts in the given kind of store.
+     *
+     * @param path the snapshot file.
+     * @param storeKind where account keys and balances are kept.
+     * @return the loaded banks and accounts.
+     * @throws IOException if the file cannot be read, is not a snapshot, its sections do not
+     *                     fit in the file, or its bank IDs or account keys are out of range,
+     *                     repeated or out of order.
+     */
+    public static Snapshot load(final Path path, final AccountStore.Kind storeKind) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not an ATM snapshot: " + path);
+            }
+            final ByteBuffer header = map(channel, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not an ATM snapshot: " + path);
+            }
+            final int numBanks = header.getInt(8);
+            final int numAccounts = header.getInt(12);
+            if (numBanks < 0 || numBanks > CreditCard.BANK_ID_LIMIT || numAccounts < 0) {
+                throw new IOException("Corrupt ATM snapshot, section size out of range: " + path);
+            }
+            final long accountsStart = align8(HEADER_SIZE + (2L * numBanks + 1) * Integer.BYTES);
+            final long stringsStart = accountsStart + 2L * numAccounts * Long.BYTES;
+            if (stringsStart > size) {
+                throw new IOException("Corrupt ATM snapshot, sections extend past the end of the file: " + path);
+            }
+
+            final ByteBuffer banks = map(channel, HEADER_SIZE, (2L * numBanks + 1) * Integer.BYTES);
+            final int[] bankIds = new int[numBanks];
+            banks.asIntBuffer().get(bankIds);
+            for (int i = 0; i < numBanks; i++) {
+                if (bankIds[i] < 0 || bankIds[i] >= CreditCard.BANK_ID_LIMIT || (i > 0 && bankIds[i] <= bankIds[i - 1])) {
+                    throw new IOException("Corrupt ATM snapshot, bank IDs out of range or not ascending: " + path);
+                }
+            }
+            final int[] nameOffsets = new int[numBanks + 1];
+            banks.position(numBanks * Integer.BYTES).asIntBuffer().get(nameOffsets);
+            if (nameOffsets[0] != 0 || nameOffsets[numBanks] > size - stringsStart) {
+                throw new IOException("Corrupt ATM snapshot, bank name offsets out of range: " + path);
+            }
+            for (int i = 0; i < numBanks; i++) {
+                if (nameOffsets[i + 1] < nameOffsets[i]) {
+                    throw new IOException("Corrupt ATM snapshot, bank name offsets out of order: " + path);
+                }
+            }
+
+            final long[] accountKeys = readLongs(channel, accountsStart, numAccounts);
+            for (int i = 1; i < numAccounts; i++) {
+                if (accountKeys[i] <= accountKeys[i - 1]) {
+                    throw new IOException("Corrupt ATM snapshot, account keys not ascending: " + path);
+                }
+            }
+            final long[] balances = readLongs(channel, accountsStart + (long) numAccounts * Long.BYTES, numAccounts);
+
+            final byte[] strings = new byte[nameOffsets[numBanks]];
+            map(channel, stringsStart, strings.length).get(strings);
+            final String[] bankNames = new String[numBanks];
+            for (int i = 0; i < numBanks; i++) {
+                bankNames[i] = new String(strings, nameOffsets[i], nameOffsets[i + 1] - nameOffsets[i], StandardCharsets.UTF_8);
+            }
+
+            return new Snapshot(new BankMapping(bankIds, bankNames), new AccountMapping(accountKeys, balances, storeKind));
+        }
+    }
+
+    /**
+     * Maps a section of the file, which must be at most MAP_WINDOW bytes.
+     */
+    private static ByteBuffer map(final FileChannel channel, final long position, final long length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Reads a section of longs, mapping at most MAP_WINDOW bytes of it at a time.
+     */
+    private static long[] readLongs(final FileChannel channel, final long position, final int count) throws IOException {
+        final long[] values = new long[count];
+        for (int done = 0; done < count; ) {
+            final int n = Math.min(count - done, MAP_WINDOW / Long.BYTES);
+            map(channel, position + (long) done * Long.BYTES, (long) n * Long.BYTES).asLongBuffer().get(values, done, n);
+            done += n;
+        }
+        return values;
+    }
+
+    /**
+     * Writes a snapshot file. The inputs are not modified; banks and accounts are written
+     * sorted by ID.
+     *
+     * @param path the snapshot file to create or replace.
+     * @param bankIds the bank identifiers.
+     * @param bankNames the name of each bank.
+     * @param accountKeys the account keys, each built with AccountMapping.key.
+     * @param balances the balance of each account in minor units.
+     * @throws IOException if the file cannot be written.
+     * @throws IllegalArgumentException if a bank ID or account key appears twice, which load
+     *                                  would refuse.
+     */
+    public static void write(final Path path,
+                             final int[] bankIds, final String[] bankNames,
+                             final long[] accountKeys, final long[] balances) throws IOException {
+        final int[] bankOrder = sortedOrder(bankIds);
+        final int[] accountOrder = sortedOrder(accountKeys);
+        for (int i = 1; i < bankOrder.length; i++) {
+            if (bankIds[bankOrder[i]] == bankIds[bankOrder[i - 1]]) {
+                throw new IllegalArgumentException("Duplicate bank ID: " + bankIds[bankOrder[i]]);
+            }
+        }
+        for (int i = 1; i < accountOrder.length; i++) {
+            if (accountKeys[accountOrder[i]] == accountKeys[accountOrder[i - 1]]) {
+                throw new IllegalArgumentException("Duplicate account key: " + accountKeys[accountOrder[i]]);
+            }
+        }
+        final byte[][] names = new byte[bankIds.length][];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = bankNames[bankOrder[i]].getBytes(StandardCharsets.UTF_8);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final Output out = new Output(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(bankIds.length);
+            out.putInt(accountKeys.length);
+            for (int i : bankOrder) {
+                out.putInt(bankIds[i]);
+            }
+            int nameOffset = 0;
+            for (byte[] name : names) {
+                out.putInt(nameOffset);
+                nameOffset += name.length;
+            }
+            out.putInt(nameOffset);
+            while (out.size() % 8 != 0) {
+                out.put((byte) 0);
+            }
+            for (int i : accountOrder) {
+                out.putLong(accountKeys[i]);
+            }
+            for (int i : accountOrder) {
+                out.putLong(balances[i]);
+            }
+            for (byte[] name : names) {
+                for (byte b : name) {
+                    out.put(b);
+                }
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Returns the indexes of the given IDs in ascending ID order, keeping equal IDs in
+     * their original order.
+     */
+    private static int[] sortedOrder(final int[] ids) {
+        final long[] keyed = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            keyed[i] = ((long) ids[i] << 32) | i;
+        }
+        Arrays.sort(keyed);
+        final int[] order = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            order[i] = (int) keyed[i];
+        }
+        return order;
+    }
+
+    /**
+     * Returns the indexes of the given keys in ascending key order, keeping equal keys in
+     * their original order.
+     */
+    private static int[] sortedOrder(final long[] keys) {
+        // Least significant digit radix sort over 16-bit digits; each pass is stable
+        int[] order = new int[keys.length];
+        int[] next = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            order[i] = i;
+        }
+        final int[] counts = new int[(1 << 16) + 1];
+        for (int shift = 0; shift < Long.SIZE; shift += 16) {
+            Arrays.fill(counts, 0);
+            for (long key : keys) {
+                counts[digit(key, shift) + 1]++;
+            }
+            for (int d = 0; d < 1 << 16; d++) {
+                counts[d + 1] += counts[d];
+            }
+            for (int i : order) {
+                next[counts[digit(keys[i], shift)]++] = i;
+            }
+            final int[] tmp = order;
+            order = next;
+            next = tmp;
+        }
+        return order;
+    }
+
+    private static int digit(final long key, final int shift) {
+        return (int) (((key ^ Long.MIN_VALUE) >>> shift) & 0xFFFF);  // Flip the sign bit so negative keys sort first
+    }
+
+    private static long align8(final long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    /**
+     * Output buffers little-endian values and writes them to a FileChannel in large blocks.
+     */
+    private static final class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private long written;
+
+        Output(final FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(final int value) throws IOException {
+            ensureRemaining(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(final long value) throws IOException {
+            ensureRemaining(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void put(final byte value) throws IOException {
+            ensureRemaining(1);
+            buffer.put(value);
+        }
+
+        long size() {
+            return written + buffer.position();
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensureRemaining(final int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java Snapshot SNAPSHOT_FILE < input.txt");
+            return;
+        }
+        final InputScanner input = new BufferedInputScanner(System.in);
+        final int numBanks = input.nextIntLine();
+        final int[] bankIds = new int[numBanks];
+        final String[] bankNames = new String[numBanks];
+        for (int i = 0; i < numBanks; i++) {
+            bankIds[i] = input.nextIntLine();
+            bankNames[i] = input.nextLine();
+        }
+
+        final int numAccounts = input.nextIntLine();
+        final long[] accountKeys = new long[numAccounts];
+        final long[] balances = new long[numAccounts];
+        for (int i = 0; i < numAccounts; i++) {
+            final int bankId = input.nextIntLine();
+            accountKeys[i] = AccountMapping.key(bankId, input.nextIntLine());
+            balances[i] = input.nextMoneyLine();
+        }
+
+        write(Path.of(args[0]), bankIds, bankNames, accountKeys, balances);
+    }
+}
@@ -0,0 +1,541 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The TransactionHistory class is an in-memory, append-only record of the deposits,
+ * withdrawals and transfers made at the terminals, for statements such as "last 10
+ * transactions" and for time-range queries.
+ *
+ * Records are stored by column in fixed-size chunks of CHUNK_SIZE records: time, account key,
+ * signed amount, the distance back to the account's previous record, and the action. That is
+ * 29 bytes per transaction and no object per record. A per-account index holds each account's
+ * latest record, so the last N transactions of an account are found by following the
+ * backward links without scanning. Times never decrease, so a time range across all accounts
+ * is found by binary search.
+ *
+ * Only the newest maxChunks chunks are kept on the heap. Older chunks are either dropped or,
+ * if a spill file is given, written to it and read back through a memory-mapped view. The
+ * spill file holds at most maxSpilledChunks chunks: beyond that the oldest spilled chunk is
+ * dropped and its place in the file reused, so the file never grows past
+ * maxSpilledChunks * CHUNK_SIZE * RECORD_BYTES bytes. Queries stop at the oldest record still
+ * available.
+ *
+ * TransactionHistory is safe to share between sessions; appends and queries hold one lock,
+ * for a few microseconds at most. That lock is shared by every account, so sessions that
+ * record their transactions contend on it, unlike AccountMapping's striped updates.
+ */
+public final class TransactionHistory implements AutoCloseable {
+    private static final int CHUNK_BITS = 16;
+
+    /**
+     * Number of records in each chunk.
+     */
+    public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    /**
+     * Bytes stored per record: time, account key, amount, previous-record distance and action.
+     */
+    public static final int RECORD_BYTES = 3 * Long.BYTES + Integer.BYTES + Byte.BYTES;
+
+    private static final int INITIAL_INDEX_CAPACITY = 1024;
+    private static final long NONE = -1;
+    private static final ATM.Action[] ACTIONS = ATM.Action.values();
+
+    private final int maxChunks;
+    private final int maxSpilledChunks;
+    private final FileChannel spill;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Guarded by lock
+    private Chunk[] chunks = new Chunk[8];
+    private long firstChunk;  // Number of the chunk in chunks[0]
+    private int chunkCount;
+    private long firstSeq;  // Oldest record still available
+    private long nextSeq;
+    private long lastTime = Long.MIN_VALUE;
+    private long[] indexKeys = new long[INITIAL_INDEX_CAPACITY];
+    private long[] indexHeads = new long[INITIAL_INDEX_CAPACITY];
+    private boolean[] indexUsed = new boolean[INITIAL_INDEX_CAPACITY];
+    private int indexSize;
+
+    /**
+     * Constructor for a history that drops chunks beyond the newest maxChunks.
+     *
+     * @param maxChunks the number of chunks to keep on the heap; at least 1.
+     */
+    public TransactionHistory(final int maxChunks) {
+        this(maxChunks, null, 0);
+    }
+
+    /**
+     * Constructor for a history that moves chunks beyond the newest maxChunks to a
+     * memory-mapped spill file instead of dropping them, until the file holds
+     * maxSpilledChunks chunks.
+     *
+     * @param maxChunks the number of chunks to keep on the heap; at least 1.
+     * @param spillPath the spill file, which is replaced, or null to drop old chunks.
+     * @param maxSpilledChunks the number of chunks to keep in the spill file; at least 1 if
+     *                         spillPath is given.
+     * @throws UncheckedIOException if the spill file cannot be created.
+     */
+    public TransactionHistory(final int maxChunks, final Path spillPath, final int maxSpilledChunks) {
+        if (maxChunks < 1) {
+            throw new IllegalArgumentException("At least one chunk must be kept in memory");
+        }
+        if (spillPath != null && maxSpilledChunks < 1) {
+            throw new IllegalArgumentException("At least one chunk must be kept in the spill file");
+        }
+        this.maxChunks = maxChunks;
+        this.maxSpilledChunks = maxSpilledChunks;
+        try {
+            this.spill = spillPath == null ? null : FileChannel.open(spillPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create history spill file " + spillPath, e);
+        }
+    }
+
+    /**
+     * The Records class receives the results of a query, one record per index in the order
+     * the query defines. It is reused between queries to avoid allocating.
+     */
+    public static final class Records {
+        private long[] times;
+        private long[] accountKeys;
+        private long[] amounts;
+        private byte[] actions;
+        private int size;
+
+        /**
+         * Constructor for the Records class.
+         *
+         * @param capacity the number of records to make room for; grows as needed.
+         */
+        public Records(final int capacity) {
+            times = new long[Math.max(1, capacity)];
+            accountKeys = new long[times.length];
+            amounts = new long[times.length];
+            actions = new byte[times.length];
+        }
+
+        /**
+         * @return the number of records.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param i the record index.
+         * @return the time of the record, in milliseconds since the epoch.
+         */
+        public long getTime(final int i) {
+            return times[Objects.checkIndex(i, size)];
+        }
+
+        /**
+         * @param i the record index.
+         * @return the account key of the record (see AccountMapping.key).
+         */
+        public long getAccountKey(final int i) {
+            return accountKeys[Objects.checkIndex(i, size)];
+        }
+
+        /**
+         * @param i the record index.
+         * @return the amount of the record in minor units; negative for money leaving the account.
+         */
+        public long getAmount(final int i) {
+            return amounts[Objects.checkIndex(i, size)];
+        }
+
+        /**
+         * @param i the record index.
+         * @return the action that made the record.
+         */
+        public ATM.Action getAction(final int i) {
+            return ACTIONS[actions[Objects.checkIndex(i, size)]];
+        }
+
+        private void add(final Chunk chunk, final int offset) {
+            if (size == times.length) {
+                final int capacity = size * 2;
+                times = Arrays.copyOf(times, capacity);
+                accountKeys = Arrays.copyOf(accountKeys, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+                actions = Arrays.copyOf(actions, capacity);
+            }
+            times[size] = chunk.time(offset);
+            accountKeys[size] = chunk.accountKey(offset);
+            amounts[size] = chunk.amount(offset);
+            actions[size] = chunk.action(offset);
+            size++;
+        }
+    }
+
+    /**
+     * Records one transaction.
+     *
+     * @param accountKey the account key (see AccountMapping.key).
+     * @param action the action that made the change.
+     * @param amount the amount in minor units; negative for money leaving the account.
+     */
+    public void record(final long accountKey, final ATM.Action action, final long amount) {
+        lock.lock();
+        try {
+            append(accountKey, action, amount, now());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records both sides of a transfer with the same time, so they are never seen apart.
+     *
+     * @param fromKey the key of the debited account.
+     * @param toKey the key of the credited account.
+     * @param amount the amount moved, in minor units; positive.
+     */
+    public void recordTransfer(final long fromKey, final long toKey, final long amount) {
+        lock.lock();
+        try {
+            final long time = now();
+            append(fromKey, ATM.Action.TRANSFER, -amount, time);
+            append(toKey, ATM.Action.TRANSFER, amount, time);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Collects the most recent transactions of an account, newest first.
+     *
+     * @param accountKey the account key.
+     * @param n the most records to collect.
+     * @param records receives the records; cleared first.
+     * @return the number of records collected.
+     */
+    public int last(final long accountKey, final int n, final Records records) {
+        records.size = 0;
+        lock.lock();
+        try {
+            long seq = head(accountKey);
+            while (seq >= firstSeq && records.size < n) {
+                final Chunk chunk = chunk(seq);
+                final int offset = (int) seq & (CHUNK_SIZE - 1);
+                records.add(chunk, offset);
+                seq = previous(chunk, offset, seq);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return records.size;
+    }
+
+    /**
+     * Collects the transactions of an account made within a time range, newest first.
+     *
+     * @param accountKey the account key.
+     * @param fromMillis the start of the range, inclusive, in milliseconds since the epoch.
+     * @param toMillis the end of the range, exclusive, in milliseconds since the epoch.
+     * @param records receives the records; cleared first.
+     * @return the number of records collected.
+     */
+    public int range(final long accountKey, final long fromMillis, final long toMillis, final Records records) {
+        records.size = 0;
+        lock.lock();
+        try {
+            long seq = head(accountKey);
+            while (seq >= firstSeq) {
+                final Chunk chunk = chunk(seq);
+                final int offset = (int) seq & (CHUNK_SIZE - 1);
+                final long time = chunk.time(offset);
+                if (time < fromMillis) {
+                    break;  // Every earlier record is older still
+                }
+                if (time < toMillis) {
+                    records.add(chunk, offset);
+                }
+                seq = previous(chunk, offset, seq);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return records.size;
+    }
+
+    /**
+     * Collects the transactions of every account made within a time range, oldest first.
+     *
+     * @param fromMillis the start of the range, inclusive, in milliseconds since the epoch.
+     * @param toMillis the end of the range, exclusive, in milliseconds since the epoch.
+     * @param max the most records to collect.
+     * @param records receives the records; cleared first.
+     * @return the number of records collected.
+     */
+    public int range(final long fromMillis, final long toMillis, final int max, final Records records) {
+        records.size = 0;
+        lock.lock();
+        try {
+            long low = firstSeq;
+            long high = nextSeq;
+            while (low < high) {  // First record at or after fromMillis
+                final long middle = (low + high) >>> 1;
+                if (chunk(middle).time((int) middle & (CHUNK_SIZE - 1)) < fromMillis) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            for (long seq = low; seq < nextSeq && records.size < max; seq++) {
+                final Chunk chunk = chunk(seq);
+                final int offset = (int) seq & (CHUNK_SIZE - 1);
+                if (chunk.time(offset) >= toMillis) {
+                    break;
+                }
+                records.add(chunk, offset);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return records.size;
+    }
+
+    /**
+     * @return the number of records still available to queries.
+     */
+    public long size() {
+        lock.lock();
+        try {
+            return nextSeq - firstSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the spill file, if any. Records that were spilled are no longer available.
+     *
+     * @throws IOException if the spill file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (spill != null) {
+                spill.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the current time, never earlier than the last time recorded.
+     */
+    private long now() {
+        lastTime = Math.max(lastTime, System.currentTimeMillis());
+        return lastTime;
+    }
+
+    private void append(final long accountKey, final ATM.Action action, final long amount, final long time) {
+        final long seq = nextSeq;
+        final int offset = (int) seq & (CHUNK_SIZE - 1);
+        if (offset == 0) {
+            addChunk();
+        }
+        final Chunk chunk = chunks[chunkCount - 1];
+        final int slot = indexSlot(accountKey);
+        final long previous = indexUsed[slot] ? indexHeads[slot] : NONE;
+        final long distance = seq - previous;
+        chunk.times[offset] = time;
+        chunk.accountKeys[offset] = accountKey;
+        chunk.amounts[offset] = amount;
+        chunk.previous[offset] = previous == NONE || distance > Integer.MAX_VALUE ? 0 : (int) distance;
+        chunk.actions[offset] = (byte) action.ordinal();
+        if (!indexUsed[slot]) {
+            indexUsed[slot] = true;
+            indexKeys[slot] = accountKey;
+            indexSize++;
+        }
+        indexHeads[slot] = seq;
+        nextSeq = seq + 1;
+        if (indexSize * 2 > indexKeys.length) {
+            growIndex();
+        }
+    }
+
+    /**
+     * Starts a new chunk, spilling or dropping the oldest one on the heap if there are
+     * already maxChunks of them. Spilling drops the oldest spilled chunk first if the spill
+     * file is full, and writes over its place in the file.
+     */
+    private void addChunk() {
+        final int onHeap = spill == null ? chunkCount : chunkCount - firstHeapChunk();
+        if (onHeap == maxChunks) {
+            if (spill == null) {
+                dropOldestChunk();
+            } else {
+                if (firstHeapChunk() == maxSpilledChunks) {
+                    dropOldestChunk();
+                }
+                final int index = firstHeapChunk();
+                final long slot = (firstChunk + index) % maxSpilledChunks;  // The dropped chunk's place, once full
+                chunks[index] = chunks[index].spill(spill, slot * CHUNK_SIZE * RECORD_BYTES);
+            }
+        }
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunks.length * 2);
+        }
+        chunks[chunkCount++] = new Chunk();
+    }
+
+    /**
+     * Drops the oldest chunk, so that its records are no longer available.
+     */
+    private void dropOldestChunk() {
+        System.arraycopy(chunks, 1, chunks, 0, chunkCount - 1);
+        chunks[--chunkCount] = null;
+        firstChunk++;
+        firstSeq = firstChunk << CHUNK_BITS;
+    }
+
+    /**
+     * @return the index in chunks of the oldest chunk still on the heap.
+     */
+    private int firstHeapChunk() {
+        int i = chunkCount;
+        while (i > 0 && chunks[i - 1].times != null) {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * @return the chunk that holds the given record, which must be available.
+     */
+    private Chunk chunk(final long seq) {
+        return chunks[(int) ((seq >>> CHUNK_BITS) - firstChunk)];
+    }
+
+    /**
+     * @return the account's previous record, or NONE if there is none.
+     */
+    private static long previous(final Chunk chunk, final int offset, final long seq) {
+        final int distance = chunk.previous(offset);
+        return distance == 0 ? NONE : seq - distance;
+    }
+
+    /**
+     * @return the latest record of the account, or NONE if it has none.
+     */
+    private long head(final long accountKey) {
+        final int slot = indexSlot(accountKey);
+        return indexUsed[slot] ? indexHeads[slot] : NONE;
+    }
+
+    /**
+     * @return the index slot that holds the account key, or the empty slot where it belongs.
+     */
+    private int indexSlot(final long accountKey) {
+        final int mask = indexKeys.length - 1;
+        final long h = accountKey * 0x9E3779B97F4A7C15L;
+        int slot = (int) (h ^ (h >>> 32)) & mask;
+        while (indexUsed[slot] && indexKeys[slot] != accountKey) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void growIndex() {
+        final long[] oldKeys = indexKeys;
+        final long[] oldHeads = indexHeads;
+        final boolean[] oldUsed = indexUsed;
+        indexKeys = new long[oldKeys.length * 2];
+        indexHeads = new long[oldKeys.length * 2];
+        indexUsed = new boolean[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                final int slot = indexSlot(oldKeys[i]);
+                indexUsed[slot] = true;
+                indexKeys[slot] = oldKeys[i];
+                indexHeads[slot] = oldHeads[i];
+            }
+        }
+    }
+
+    /**
+     * A Chunk holds CHUNK_SIZE records, either in heap arrays or, once spilled, in a
+     * memory-mapped region of the spill file with the same columns laid out one after another.
+     */
+    private static final class Chunk {
+        private long[] times = new long[CHUNK_SIZE];
+        private long[] accountKeys = new long[CHUNK_SIZE];
+        private long[] amounts = new long[CHUNK_SIZE];
+        private int[] previous = new int[CHUNK_SIZE];
+        private byte[] actions = new byte[CHUNK_SIZE];
+        private MappedByteBuffer mapped;
+
+        private static final int TIMES = 0;
+        private static final int KEYS = TIMES + CHUNK_SIZE * Long.BYTES;
+        private static final int AMOUNTS = KEYS + CHUNK_SIZE * Long.BYTES;
+        private static final int PREVIOUS = AMOUNTS + CHUNK_SIZE * Long.BYTES;
+        private static final int ACTIONS = PREVIOUS + CHUNK_SIZE * Integer.BYTES;
+
+        long time(final int i) {
+            return times != null ? times[i] : mapped.getLong(TIMES + i * Long.BYTES);
+        }
+
+        long accountKey(final int i) {
+            return times != null ? accountKeys[i] : mapped.getLong(KEYS + i * Long.BYTES);
+        }
+
+        long amount(final int i) {
+            return times != null ? amounts[i] : mapped.getLong(AMOUNTS + i * Long.BYTES);
+        }
+
+        int previous(final int i) {
+            return times != null ? previous[i] : mapped.getInt(PREVIOUS + i * Integer.BYTES);
+        }
+
+        byte action(final int i) {
+            return times != null ? actions[i] : mapped.get(ACTIONS + i);
+        }
+
+        /**
+         * Writes the columns to the spill file at the given position, maps them back, and
+         * releases the heap arrays.
+         *
+         * @return this chunk.
+         */
+        Chunk spill(final FileChannel file, final long position) {
+            try {
+                final MappedByteBuffer region = file.map(FileChannel.MapMode.READ_WRITE, position,
+                        (long) CHUNK_SIZE * RECORD_BYTES);
+                region.order(ByteOrder.nativeOrder());
+                region.asLongBuffer().put(times).put(accountKeys).put(amounts);
+                region.position(PREVIOUS);
+                region.asIntBuffer().put(previous);
+                region.put(ACTIONS, actions);
+                region.position(0);
+                mapped = region;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot spill transaction history", e);
+            }
+            times = null;
+            accountKeys = null;
+            amounts = null;
+            previous = null;
+            actions = null;
+            return this;
+        }
+    }
+}
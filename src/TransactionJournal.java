@@ -0,0 +1,396 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The TransactionJournal class is an append-only write-ahead log of account balance changes.
+ * Every change made through AccountMapping appends the account key and its new balance, so
+ * replaying the journal over the starting balances restores the state after a crash.
+ *
+ * Records are buffered in memory and written through a FileChannel. When a record becomes
+ * durable depends on the Durability mode:
+ * - SYNC: each caller writes and fsyncs while holding the journal lock, one at a time.
+ * - GROUP: the first waiting caller becomes the leader and fsyncs everything appended so far,
+ *   while later callers keep appending to the next batch and share the leader's fsync.
+ * - ASYNC: callers never wait; a background thread writes and fsyncs every few milliseconds.
+ *
+ * Each record is 20 bytes: account key (bank ID and account ID, see AccountMapping.key), new balance in
+ * minor units, and a checksum that lets recovery stop at a record that was only partially written when the
+ * process died.
+ *
+ * The two records of a transfer are appended together, and the first one's checksum is marked
+ * as continued. Recovery applies such a record only if the record after it is intact, so a
+ * transfer is never half replayed.
+ *
+ * A failed write or fsync is permanent: nothing appended after it becomes durable, and
+ * hasFailed tells callers to stop making changes that could not be logged.
+ */
+public final class TransactionJournal implements AutoCloseable {
+    private static final int MAGIC = 0x41544D4A;  // "ATMJ"
+    private static final int VERSION = 4;
+    private static final int CONTINUED = 0x54524E53;  // "TRNS", marks the first record of a pair
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 20;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final long ASYNC_FLUSH_INTERVAL_MILLIS = 10;
+
+    /**
+     * Durability defines when an appended record is guaranteed to be on disk.
+     */
+    public enum Durability {
+        SYNC, GROUP, ASYNC;
+
+        /**
+         * Parses a durability mode name, ignoring case.
+         *
+         * @param s the mode name.
+         * @return the corresponding Durability.
+         * @throws IllegalArgumentException if the name is not a known mode.
+         */
+        public static Durability parse(final String s) {
+            return valueOf(s.toUpperCase());
+        }
+    }
+
+    private final FileChannel channel;
+    private final Durability durability;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+    private final Thread flusher;
+
+    // Guarded by lock
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private long appendedSeq;
+    private long durableSeq;
+    private boolean flushing;
+    private boolean closed;
+    private volatile IOException failure;  // Written under lock, read without it by hasFailed
+
+    // Recovered records, released once replayed
+    private long[] recoveredKeys;
+    private long[] recoveredBalances;
+
+    private TransactionJournal(final FileChannel channel, final Durability durability,
+                               final long[] recoveredKeys, final long[] recoveredBalances) {
+        this.channel = channel;
+        this.durability = durability;
+        this.recoveredKeys = recoveredKeys;
+        this.recoveredBalances = recoveredBalances;
+        if (durability == Durability.ASYNC) {
+            flusher = new Thread(this::flushPeriodically, "journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Opens the journal at the given path, creating it if it does not exist. Existing records
+     * are read for replay, and a partially written record at the end is discarded.
+     *
+     * @param path the journal file.
+     * @param durability when appended records become durable.
+     * @return the opened journal.
+     * @throws IOException if the file cannot be opened or is not a journal.
+     */
+    public static TransactionJournal open(final Path path, final Durability durability) throws IOException {
+        final FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final long size = channel.size();
+            if (size < HEADER_SIZE) {
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+                channel.truncate(0);
+                channel.write(header, 0);
+                channel.force(true);
+                channel.position(HEADER_SIZE);
+                return new TransactionJournal(channel, durability, new long[0], new long[0]);
+            }
+
+            final ByteBuffer contents = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (contents.getInt() != MAGIC) {
+                throw new IOException("Not a transaction journal: " + path);
+            }
+            if (contents.getInt() != VERSION) {
+                throw new IOException("Unsupported transaction journal version: " + path);
+            }
+            final int maxRecords = (int) Math.min(Integer.MAX_VALUE, (size - HEADER_SIZE) / RECORD_SIZE);
+            final long[] keys = new long[maxRecords];
+            final long[] balances = new long[maxRecords];
+            int count = 0;
+            while (count < maxRecords) {
+                final long accountKey = contents.getLong();
+                final long balance = contents.getLong();
+                final int check = contents.getInt();
+                if (check == checksum(accountKey, balance)) {
+                    keys[count] = accountKey;
+                    balances[count] = balance;
+                    count++;
+                    continue;
+                }
+                if (check != (checksum(accountKey, balance) ^ CONTINUED) || count + 1 >= maxRecords) {
+                    break;  // Torn write at the end of the journal
+                }
+                final long pairedKey = contents.getLong();
+                final long pairedBalance = contents.getLong();
+                if (contents.getInt() != checksum(pairedKey, pairedBalance)) {
+                    break;  // The second record of a pair was torn, so drop the first too
+                }
+                keys[count] = accountKey;
+                balances[count] = balance;
+                keys[count + 1] = pairedKey;
+                balances[count + 1] = pairedBalance;
+                count += 2;
+            }
+            final long validEnd = HEADER_SIZE + (long) count * RECORD_SIZE;
+            channel.truncate(validEnd);
+            channel.position(validEnd);
+            return new TransactionJournal(channel, durability,
+                    Arrays.copyOf(keys, count), Arrays.copyOf(balances, count));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of records recovered when the journal was opened and not yet replayed.
+     */
+    public int getRecoveredCount() {
+        return recoveredKeys.length;
+    }
+
+    /**
+     * Applies the records recovered when the journal was opened to the given mapping, in the
+     * order they were written. Records for accounts the mapping does not know are skipped.
+     *
+     * @param accountMapping the mapping to restore.
+     * @return the number of records applied.
+     */
+    public int replay(final AccountMapping accountMapping) {
+        int applied = 0;
+        for (int i = 0; i < recoveredKeys.length; i++) {
+            if (accountMapping.restoreAccountBalance(recoveredKeys[i], recoveredBalances[i])) {
+                applied++;
+            }
+        }
+        recoveredKeys = new long[0];
+        recoveredBalances = new long[0];
+        return applied;
+    }
+
+    /**
+     * @return the durability mode of this journal.
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Appends a balance change to the in-memory batch. The record is not durable until
+     * awaitDurable returns for the sequence number this method returns.
+     *
+     * @param accountKey the key of the account that changed.
+     * @param newBalance the balance of the account after the change, in minor units.
+     * @return the sequence number of the record.
+     */
+    public long append(final long accountKey, final long newBalance) {
+        lock.lock();
+        try {
+            if (pending.remaining() < RECORD_SIZE) {
+                pending = grow(pending);
+            }
+            pending.putLong(accountKey).putLong(newBalance).putInt(checksum(accountKey, newBalance));
+            return ++appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends the two balance changes of a transfer as one unit: recovery either replays both
+     * or neither. They are not durable until awaitDurable returns for the sequence number
+     * this method returns.
+     *
+     * @param fromKey the key of the debited account.
+     * @param fromBalance the balance of the debited account after the transfer, in minor units.
+     * @param toKey the key of the credited account.
+     * @param toBalance the balance of the credited account after the transfer, in minor units.
+     * @return the sequence number of the second record.
+     */
+    public long appendTransfer(final long fromKey, final long fromBalance, final long toKey, final long toBalance) {
+        lock.lock();
+        try {
+            if (pending.remaining() < 2 * RECORD_SIZE) {
+                pending = grow(pending);
+            }
+            pending.putLong(fromKey).putLong(fromBalance).putInt(checksum(fromKey, fromBalance) ^ CONTINUED);
+            pending.putLong(toKey).putLong(toBalance).putInt(checksum(toKey, toBalance));
+            appendedSeq += 2;
+            return appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if writing the journal has failed, after which no record becomes durable.
+     */
+    public boolean hasFailed() {
+        return failure != null;
+    }
+
+    /**
+     * @return the error that made writing the journal fail, or null if it has not failed.
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Blocks until the record with the given sequence number is durable according to this
+     * journal's mode. In ASYNC mode this returns immediately.
+     *
+     * @param seq a sequence number returned by append.
+     * @throws UncheckedIOException if writing the journal failed.
+     */
+    public void awaitDurable(final long seq) {
+        if (!tryAwaitDurable(seq)) {
+            throw new UncheckedIOException("Transaction journal write failed", failure);
+        }
+    }
+
+    /**
+     * Blocks like awaitDurable, but returns false instead of throwing if writing the journal
+     * failed. In ASYNC mode this returns at once, false only if an earlier write has failed.
+     *
+     * @param seq a sequence number returned by append.
+     * @return true if the record is durable, or in ASYNC mode will be written.
+     */
+    public boolean tryAwaitDurable(final long seq) {
+        if (durability == Durability.ASYNC) {
+            return failure == null;
+        }
+        lock.lock();
+        try {
+            while (durableSeq < seq) {
+                if (failure != null) {
+                    return false;
+                }
+                if (durability == Durability.SYNC) {
+                    writeBatch(true, false);  // Hold the lock for the whole write
+                } else if (flushing) {
+                    flushed.awaitUninterruptibly();  // Ride along with the current leader's fsync
+                } else {
+                    writeBatch(true, true);  // Become the leader for the next group
+                }
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the pending batch to the file. Must be called with the lock held and no other
+     * flush in progress. When releaseLock is set, the lock is released during the I/O so that
+     * other callers can keep appending to the next batch.
+     */
+    private void writeBatch(final boolean force, final boolean releaseLock) {
+        final ByteBuffer batch = pending;
+        pending = spare;
+        spare = batch;
+        final long batchEnd = appendedSeq;
+        flushing = true;
+        if (releaseLock) {
+            lock.unlock();
+        }
+        IOException error = null;
+        try {
+            batch.flip();
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+            if (force) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            batch.clear();
+            if (releaseLock) {
+                lock.lock();
+            }
+            flushing = false;
+            if (error != null) {
+                failure = error;
+            } else {
+                durableSeq = batchEnd;
+            }
+            flushed.signalAll();
+        }
+    }
+
+    private void flushPeriodically() {
+        lock.lock();
+        try {
+            while (!closed) {
+                flushed.await(ASYNC_FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (!flushing && durableSeq < appendedSeq && failure == null) {
+                    writeBatch(true, true);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes and fsyncs every appended record, then closes the file.
+     *
+     * @throws IOException if the final write or close fails.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            while (flushing) {
+                flushed.awaitUninterruptibly();
+            }
+            if (durableSeq < appendedSeq && failure == null) {
+                writeBatch(true, false);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            flusher.interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static ByteBuffer grow(final ByteBuffer buffer) {
+        final ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        return larger.put(buffer);
+    }
+
+    private static int checksum(final long accountKey, final long balance) {
+        return MAGIC ^ Long.hashCode(accountKey * 0x9E3779B97F4A7C15L) ^ Long.hashCode(balance * 0xC2B2AE3D27D4EB4FL);
+    }
+}
@@ -0,0 +1,238 @@
+import java.util.Arrays;
+
+/**
+ * The WithdrawalLimits class enforces per-card withdrawal rules on top of the funds check:
+ * a daily limit on the total withdrawn, and a velocity rule allowing at most a given number
+ * of withdrawals within a sliding time window.
+ *
+ * State is kept in long arrays with a fixed stride per account slot, so a check touches
+ * only that slot's cache line or two, costs O(1) and does not allocate. The arrays are
+ * segments of SEGMENT_SIZE slots, so the limits can grow with AccountMapping without
+ * copying the state of existing slots. Days are UTC calendar
+ * days: the running total of a slot resets on its first withdrawal of a new day. The
+ * velocity rule keeps the times of the last maxWithdrawals withdrawals of each slot in a
+ * ring; a withdrawal is refused while the oldest of them is still inside the window.
+ *
+ * WithdrawalLimits does no locking of its own. AccountMapping calls it while holding the
+ * slot's stripe lock, so the rules, the funds check and the balance update are one atomic
+ * step however many terminals use the same card at once.
+ */
+public final class WithdrawalLimits {
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+    private static final int SEGMENT_BITS = 12;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    /**
+     * Marks a ring entry that holds no withdrawal yet; it is older than any window.
+     */
+    private static final long NEVER = Long.MIN_VALUE;
+
+    // Offsets within a slot's stride; the velocity ring follows them
+    private static final int DAY = 0;
+    private static final int DAY_TOTAL = 1;
+    private static final int NEXT_RECENT = 2;
+    private static final int RECENT = 3;
+
+    private final long dailyLimit;
+    private final int maxWithdrawals;
+    private final long windowMillis;
+    private final String dailyRule;
+    private final String velocityRule;
+
+    private final boolean daily;
+    private final boolean velocity;
+    private final int stride;
+    private volatile long[][] segments = new long[0][];
+
+    /**
+     * Constructor for the WithdrawalLimits class.
+     *
+     * @param capacity the number of account slots to track, at least AccountMapping.size.
+     * @param dailyLimit the most that may be withdrawn from one account per day, in minor units,
+     *                   or Long.MAX_VALUE for no daily limit.
+     * @param maxWithdrawals the most withdrawals allowed within the window, or 0 for no velocity rule.
+     * @param windowMillis the length of the velocity window in milliseconds.
+     */
+    public WithdrawalLimits(final int capacity, final long dailyLimit,
+                            final int maxWithdrawals, final long windowMillis) {
+        if (capacity < 0 || dailyLimit <= 0 || maxWithdrawals < 0 || windowMillis < 0) {
+            throw new IllegalArgumentException("Withdrawal limits must be positive");
+        }
+        this.dailyLimit = dailyLimit;
+        this.maxWithdrawals = maxWithdrawals;
+        this.windowMillis = windowMillis;
+        this.dailyRule = "daily limit of " + Money.format(dailyLimit);
+        this.velocityRule = "limit of " + maxWithdrawals + " withdrawals in " + windowMillis / 1000.0 + " s";
+
+        this.daily = dailyLimit != Long.MAX_VALUE;
+        this.velocity = maxWithdrawals > 0;
+        this.stride = RECENT + maxWithdrawals;
+        ensureCapacity(capacity);
+    }
+
+    /**
+     * LimitExceeded is a runtime exception thrown when a withdrawal is refused by one of the
+     * rules. Like InsufficientFunds, it does not capture a stack trace, and its message is
+     * only built when it is asked for.
+     */
+    public static final class LimitExceeded extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int bankId;
+        private final int accountId;
+        private final String operation;
+        private final long amount;
+        private final String rule;
+
+        /**
+         * Constructor that creates an exception indicating a refused withdrawal.
+         *
+         * @param bankId the bank ID of the account.
+         * @param accountId the account ID.
+         * @param amount the amount that was attempted to withdraw, in minor units.
+         * @param rule a description of the rule that refused it.
+         */
+        public LimitExceeded(final int bankId, final int accountId, final long amount, final String rule) {
+            this(bankId, accountId, "withdraw", amount, rule);
+        }
+
+        /**
+         * Constructor that creates an exception indicating a refused withdrawal, or another
+         * operation that debits the account, such as a transfer.
+         *
+         * @param bankId the bank ID of the account.
+         * @param accountId the account ID.
+         * @param operation the verb for what was attempted, such as "withdraw" or "transfer".
+         * @param amount the amount that was attempted to debit, in minor units.
+         * @param rule a description of the rule that refused it.
+         */
+        public LimitExceeded(final int bankId, final int accountId, final String operation, final long amount,
+                             final String rule) {
+            super(null, null, false, false);
+            this.bankId = bankId;
+            this.accountId = accountId;
+            this.operation = operation;
+            this.amount = amount;
+            this.rule = rule;
+        }
+
+        /**
+         * @return the bank ID of the account.
+         */
+        public int getBankId() {
+            return bankId;
+        }
+
+        /**
+         * @return the account ID.
+         */
+        public int getAccountId() {
+            return accountId;
+        }
+
+        /**
+         * @return the verb for what was attempted, such as "withdraw" or "transfer".
+         */
+        public String getOperation() {
+            return operation;
+        }
+
+        /**
+         * @return the amount that was attempted to debit, in minor units.
+         */
+        public long getAmount() {
+            return amount;
+        }
+
+        /**
+         * @return a description of the rule that refused the withdrawal.
+         */
+        public String getRule() {
+            return rule;
+        }
+
+        @Override
+        public String getMessage() {
+            return "LIMIT EXCEEDED: Attempted to " + operation + " " + Money.format(amount) + " beyond the " + rule;
+        }
+
+        @Override
+        public String toString() {
+            return getMessage();
+        }
+    }
+
+    /**
+     * @return the number of account slots tracked.
+     */
+    public int getCapacity() {
+        return segments.length << SEGMENT_BITS;
+    }
+
+    /**
+     * Adds segments until the given number of slots are tracked. AccountMapping calls this
+     * before it hands out a new slot; it must only be called by one thread at a time.
+     *
+     * @param capacity the number of account slots to track.
+     */
+    void ensureCapacity(final int capacity) {
+        final long[][] current = segments;
+        final int count = (int) (((long) capacity + SEGMENT_MASK) >>> SEGMENT_BITS);
+        if (count <= current.length) {
+            return;
+        }
+        final long[][] grown = Arrays.copyOf(current, count);
+        for (int i = current.length; i < count; i++) {
+            grown[i] = new long[Math.multiplyExact(SEGMENT_SIZE, stride)];
+            for (int slot = 0; slot < SEGMENT_SIZE; slot++) {
+                clear(grown[i], slot * stride);
+            }
+        }
+        segments = grown;
+    }
+
+    private void clear(final long[] state, final int base) {
+        Arrays.fill(state, base, base + RECENT, 0);
+        Arrays.fill(state, base + RECENT, base + stride, NEVER);
+    }
+
+    /**
+     * Checks a withdrawal against the rules and, if it is allowed, counts it. The caller must
+     * hold the slot's lock and must go on to apply the withdrawal.
+     *
+     * @param slot the account slot.
+     * @param amount the amount to withdraw, in minor units; positive.
+     * @param nowMillis the current time in milliseconds since the epoch.
+     * @return AccountMapping.OK, DAILY_LIMIT_EXCEEDED or VELOCITY_LIMIT_EXCEEDED.
+     */
+    int tryWithdraw(final int slot, final long amount, final long nowMillis) {
+        final long[] state = segments[slot >>> SEGMENT_BITS];
+        final int base = (slot & SEGMENT_MASK) * stride;
+        final long today = Math.floorDiv(nowMillis, MILLIS_PER_DAY);
+        final long total = state[base + DAY] == today ? state[base + DAY_TOTAL] : 0;  // First withdrawal of the day starts afresh
+        if (daily && amount > dailyLimit - total) {
+            return AccountMapping.DAILY_LIMIT_EXCEEDED;
+        }
+        final int next = (int) state[base + NEXT_RECENT];
+        if (velocity && state[base + RECENT + next] > nowMillis - windowMillis) {
+            return AccountMapping.VELOCITY_LIMIT_EXCEEDED;  // The withdrawal maxWithdrawals ago is still in the window
+        }
+
+        state[base + DAY] = today;
+        state[base + DAY_TOTAL] = total + amount;
+        if (velocity) {
+            state[base + RECENT + next] = nowMillis;
+            state[base + NEXT_RECENT] = next + 1 == maxWithdrawals ? 0 : next + 1;
+        }
+        return AccountMapping.OK;
+    }
+
+    /**
+     * @param status DAILY_LIMIT_EXCEEDED or VELOCITY_LIMIT_EXCEEDED.
+     * @return a description of the rule that produced the status.
+     */
+    String describe(final int status) {
+        return status == AccountMapping.DAILY_LIMIT_EXCEEDED ? dailyRule : velocityRule;
+    }
+}
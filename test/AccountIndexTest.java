@@ -0,0 +1,55 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.BitSet;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that AccountIndex lookups find every account while the table is being rehashed in
+ * the background, including accounts inserted and removed during the rehash.
+ */
+class AccountIndexTest {
+    private static final int BANK_ID = 12;
+    private static final int INITIAL_KEYS = 1 << 18;  // Large enough for the rehash to take many steps
+
+    @Test
+    void findDuringRehash() {
+        final AccountIndex index = new AccountIndex(keys(INITIAL_KEYS));
+        int next = INITIAL_KEYS;
+        while (!index.isRehashing()) {
+            assertTrue(index.insert(key(next), next));
+            next++;
+        }
+
+        final BitSet removed = new BitSet();
+        int passes = 0;
+        while (index.isRehashing()) {
+            final int victim = passes * 7 % INITIAL_KEYS;
+            assertEquals(victim, index.remove(key(victim)));
+            removed.set(victim);
+            assertTrue(index.insert(key(next), next));
+            next++;
+            for (int i = passes % 64; i < next; i += 64) {  // A different sample on each pass
+                assertEquals(removed.get(i) ? AccountIndex.EMPTY : i, index.find(key(i)), "account " + i);
+            }
+            passes++;
+        }
+        assertTrue(passes > 0, "the rehash finished before it could be observed");
+
+        for (int i = 0; i < next; i++) {
+            assertEquals(removed.get(i) ? AccountIndex.EMPTY : i, index.find(key(i)), "account " + i);
+        }
+    }
+
+    private static long[] keys(final int count) {
+        final long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = key(i);
+        }
+        return keys;
+    }
+
+    private static long key(final int accountId) {
+        return AccountMapping.key(BANK_ID, accountId);
+    }
+}
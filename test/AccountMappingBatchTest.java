@@ -0,0 +1,101 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that AccountMapping.applyBatch gives every item the outcome it would have had if
+ * the items had been applied one at a time in batch order, and that the applied changes are
+ * journaled.
+ */
+class AccountMappingBatchTest {
+    private static final int BANK_ID = 12;
+    private static final int NUM_ACCOUNTS = 1_000;
+    private static final int NUM_ITEMS = 100_000;  // Enough for the batch to be split across tasks
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reportsEachRefusal() {
+        final AccountMapping accounts = new AccountMapping(
+                new long[] {AccountMapping.key(BANK_ID, 1), AccountMapping.key(BANK_ID, 2)},
+                new long[] {1_000, Long.MAX_VALUE - 10});
+        final AccountMapping.BatchResult result = accounts.applyBatch(
+                new long[] {AccountMapping.key(BANK_ID, 1), AccountMapping.key(BANK_ID, 1),
+                        AccountMapping.key(BANK_ID, 3), AccountMapping.key(BANK_ID, 2), AccountMapping.key(BANK_ID, 1)},
+                new long[] {-1_500, 600, 5, 11, -1_500});
+        assertEquals(AccountMapping.INSUFFICIENT_FUNDS, result.getStatus(0));
+        assertEquals(AccountMapping.OK, result.getStatus(1));
+        assertEquals(AccountMapping.NO_SUCH_ACCOUNT, result.getStatus(2));
+        assertEquals(AccountMapping.OVERFLOW, result.getStatus(3));
+        assertEquals(AccountMapping.OK, result.getStatus(4));  // After the deposit before it
+        assertEquals(100, accounts.tryGetAccountBalance(BANK_ID, 1));
+        assertEquals(Long.MAX_VALUE - 10, accounts.tryGetAccountBalance(BANK_ID, 2));
+    }
+
+    @Test
+    void matchesApplyingItemsInOrder() {
+        final long[] keys = new long[NUM_ITEMS];
+        final long[] amounts = new long[NUM_ITEMS];
+        final Random random = new Random(13);
+        for (int i = 0; i < NUM_ITEMS; i++) {
+            keys[i] = AccountMapping.key(BANK_ID, random.nextInt(NUM_ACCOUNTS + 10));  // A few unknown accounts
+            amounts[i] = random.nextInt(2_000) - 1_100;
+        }
+        final AccountMapping batched = newAccounts();
+        final AccountMapping sequential = newAccounts();
+
+        final AccountMapping.BatchResult result = batched.applyBatch(keys, amounts);
+        assertEquals(NUM_ITEMS, result.size());
+        for (int i = 0; i < NUM_ITEMS; i++) {
+            final int expected = sequential.tryChangeAccountAmount(BANK_ID, (int) keys[i], amounts[i]);
+            assertEquals(expected, result.getStatus(i), "item " + i);
+        }
+        assertTrue(result.getCount(AccountMapping.INSUFFICIENT_FUNDS) > 0);
+        assertBalancesEqual(sequential, batched);
+    }
+
+    @Test
+    void journalsAppliedItems() throws IOException {
+        final Path path = dir.resolve("journal");
+        final AccountMapping batched = newAccounts();
+        final Random random = new Random(29);
+        final long[] keys = new long[NUM_ITEMS];
+        final long[] amounts = new long[NUM_ITEMS];
+        for (int i = 0; i < NUM_ITEMS; i++) {
+            keys[i] = AccountMapping.key(BANK_ID, random.nextInt(NUM_ACCOUNTS));
+            amounts[i] = random.nextInt(2_000) - 1_100;
+        }
+        try (TransactionJournal journal = TransactionJournal.open(path, TransactionJournal.Durability.GROUP)) {
+            batched.attachJournal(journal);
+            batched.applyBatch(keys, amounts);
+        }
+
+        final AccountMapping restored = newAccounts();
+        try (TransactionJournal journal = TransactionJournal.open(path, TransactionJournal.Durability.GROUP)) {
+            journal.replay(restored);
+        }
+        assertBalancesEqual(batched, restored);
+    }
+
+    private static AccountMapping newAccounts() {
+        final long[] keys = new long[NUM_ACCOUNTS];
+        final long[] balances = new long[NUM_ACCOUNTS];
+        for (int i = 0; i < NUM_ACCOUNTS; i++) {
+            keys[i] = AccountMapping.key(BANK_ID, i);
+            balances[i] = 10_000;
+        }
+        return new AccountMapping(keys, balances);
+    }
+
+    private static void assertBalancesEqual(final AccountMapping expected, final AccountMapping actual) {
+        for (int i = 0; i < NUM_ACCOUNTS; i++) {
+            assertEquals(expected.tryGetAccountBalance(BANK_ID, i), actual.tryGetAccountBalance(BANK_ID, i), "account " + i);
+        }
+    }
+}
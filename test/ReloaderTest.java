@@ -0,0 +1,84 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that Reloader.restore brings back, on every restart, exactly the changes that
+ * applyPending made before it, whatever their outcome.
+ */
+class ReloaderTest {
+    private static final int BANK_ID = 12;
+    private static final int NEW_BANK_ID = 56;
+
+    @TempDir
+    Path dir;
+
+    private final ByteArrayOutputStream logged = new ByteArrayOutputStream();
+    private final PrintStream log = new PrintStream(logged, true, StandardCharsets.UTF_8);
+
+    @Test
+    void restoreIsIdempotentAcrossRestarts() throws IOException {
+        write("1-open.delta", "3", "add-bank", "56", "Wells Fargo",
+                "add-account", "56", "11111", "20.00", "remove-account", "12", "1");
+        write("2-refused.delta", "2", "rename-bank", "56", "Wells", "remove-account", "12", "999");  // Fails at its second change
+        write("3-reopen.delta", "1", "add-account", "12", "1", "1.00");
+
+        Instance running = new Instance();
+        running.reloader.applyPending(dir, log);
+        assertEquals(List.of("00000001-1-open.applied", "00000002-2-refused.failed", "00000003-3-reopen.applied"),
+                fileNames());
+        running.assertChanged();
+        logged.reset();
+
+        for (int restart = 0; restart < 3; restart++) {
+            running = new Instance();
+            assertEquals(3, running.reloader.restore(dir, log));
+            running.reloader.applyPending(dir, log);  // Nothing is pending
+            running.assertChanged();
+            assertEquals(3, fileNames().size());
+        }
+        assertEquals("", logged.toString(StandardCharsets.UTF_8));  // A failed delta fails again quietly
+
+        write("4-later.delta", "1", "add-account", "12", "2", "2.00");
+        running.reloader.applyPending(dir, log);
+        assertEquals("00000004-4-later.applied", fileNames().get(3));  // Numbering carries on after the restarts
+        running = new Instance();
+        running.reloader.restore(dir, log);
+        running.assertChanged();
+        assertEquals(200, running.accounts.tryGetAccountBalance(BANK_ID, 2));
+    }
+
+    private void write(final String name, final String... lines) throws IOException {
+        Files.write(dir.resolve(name), List.of(lines), StandardCharsets.UTF_8);
+    }
+
+    private List<String> fileNames() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(file -> file.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    /**
+     * The banks and accounts of one run, as loaded from the startup input.
+     */
+    private static final class Instance {
+        final BankMapping banks = new BankMapping(new int[] {BANK_ID}, new String[] {"Chase"});
+        final AccountMapping accounts = new AccountMapping(new long[] {AccountMapping.key(BANK_ID, 1)}, new long[] {5_000});
+        final Reloader reloader = new Reloader(banks, accounts);
+
+        void assertChanged() {
+            assertEquals("Wells", banks.tryGetBankName(NEW_BANK_ID));
+            assertEquals(2_000, accounts.tryGetAccountBalance(NEW_BANK_ID, 11111));
+            assertEquals(100, accounts.tryGetAccountBalance(BANK_ID, 1));  // Removed, then added again
+        }
+    }
+}
@@ -0,0 +1,129 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that a Snapshot loads back what was written, and that damaged files are refused
+ * with an IOException.
+ */
+class SnapshotTest {
+    // Offsets in the file written by setUp: two banks, then three accounts from ACCOUNTS_START
+    private static final int NUM_BANKS_OFFSET = 8;
+    private static final int NUM_ACCOUNTS_OFFSET = 12;
+    private static final int BANK_IDS_START = 16;
+    private static final int NAME_OFFSETS_START = BANK_IDS_START + 2 * Integer.BYTES;
+    private static final int ACCOUNTS_START = 40;
+
+    @TempDir
+    Path dir;
+
+    private Path path;
+    private byte[] contents;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        path = dir.resolve("snapshot");
+        Snapshot.write(path, new int[] {34, 12}, new String[] {"BofA", "Chase"},
+                new long[] {AccountMapping.key(34, 23456), AccountMapping.key(12, 12345), AccountMapping.key(34, 12345)},
+                new long[] {5_000, 10_000, 725});
+        contents = Files.readAllBytes(path);
+    }
+
+    @Test
+    void roundTrip() throws Exception {
+        for (AccountStore.Kind kind : AccountStore.Kind.values()) {
+            final Snapshot snapshot = Snapshot.load(path, kind);
+            assertEquals("Chase", snapshot.getBankMapping().getBankName(12));
+            assertEquals("BofA", snapshot.getBankMapping().getBankName(34));
+            final AccountMapping accounts = snapshot.getAccountMapping();
+            assertEquals(3, accounts.size());
+            assertEquals(10_000, accounts.getAccountBalance(12, 12345));
+            assertEquals(5_000, accounts.getAccountBalance(34, 23456));
+            assertEquals(725, accounts.getAccountBalance(34, 12345));
+        }
+    }
+
+    @Test
+    void writeRefusesDuplicates() {
+        assertThrows(IllegalArgumentException.class, () -> Snapshot.write(path,
+                new int[] {12, 12}, new String[] {"Chase", "Chase"}, new long[0], new long[0]));
+        assertThrows(IllegalArgumentException.class, () -> Snapshot.write(path, new int[0], new String[0],
+                new long[] {AccountMapping.key(12, 1), AccountMapping.key(12, 1)}, new long[] {1, 2}));
+    }
+
+    @Test
+    void refusesOtherFiles() {
+        assertRefused(new byte[0]);
+        assertRefused("not a snapshot at all".getBytes());
+    }
+
+    @Test
+    void refusesTruncatedFiles() {
+        for (int length = 0; length < contents.length; length++) {
+            assertRefused(Arrays.copyOf(contents, length));
+        }
+    }
+
+    @Test
+    void refusesBadSectionSizes() {
+        assertRefused(withInt(NUM_BANKS_OFFSET, -1));
+        assertRefused(withInt(NUM_BANKS_OFFSET, 1 << 30));
+        assertRefused(withInt(NUM_ACCOUNTS_OFFSET, -5));
+        assertRefused(withInt(NUM_ACCOUNTS_OFFSET, 1 << 29));
+    }
+
+    @Test
+    void refusesBadBankIds() {
+        assertRefused(withInt(BANK_IDS_START, -3));
+        assertRefused(withInt(BANK_IDS_START + Integer.BYTES, 12));  // Duplicate
+        assertRefused(withInt(BANK_IDS_START, 35));  // Not ascending
+        assertRefused(withInt(BANK_IDS_START + Integer.BYTES, CreditCard.BANK_ID_LIMIT));
+    }
+
+    @Test
+    void refusesBadNameOffsets() {
+        assertRefused(withInt(NAME_OFFSETS_START, 1));
+        assertRefused(withInt(NAME_OFFSETS_START + Integer.BYTES, 100));  // Beyond the offset after it
+        assertRefused(withInt(NAME_OFFSETS_START + 2 * Integer.BYTES, 100_000));
+    }
+
+    @Test
+    void refusesRepeatedOrUnsortedAccountKeys() {
+        final ByteBuffer file = ByteBuffer.wrap(contents).order(ByteOrder.LITTLE_ENDIAN);
+        final long first = file.getLong(ACCOUNTS_START);
+        final long second = file.getLong(ACCOUNTS_START + Long.BYTES);
+        assertRefused(withLong(ACCOUNTS_START + Long.BYTES, first));
+        assertRefused(withLong(ACCOUNTS_START, second + 1));
+    }
+
+    private byte[] withInt(final int offset, final int value) {
+        final byte[] copy = contents.clone();
+        ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, value);
+        return copy;
+    }
+
+    private byte[] withLong(final int offset, final long value) {
+        final byte[] copy = contents.clone();
+        ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN).putLong(offset, value);
+        return copy;
+    }
+
+    private void assertRefused(final byte[] damaged) {
+        final Path file = dir.resolve("damaged");
+        try {
+            Files.write(file, damaged);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        assertThrows(IOException.class, () -> Snapshot.load(file));
+    }
+}
@@ -0,0 +1,91 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that replaying a TransactionJournal restores the balances it logged, and that a
+ * transfer cut off part way through being written is replayed not at all.
+ */
+class TransactionJournalTest {
+    private static final int BANK_ID = 12;
+    private static final int RECORD_SIZE = 20;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replayRestoresLoggedBalances() throws IOException {
+        final Path path = dir.resolve("journal");
+        try (TransactionJournal journal = TransactionJournal.open(path, TransactionJournal.Durability.SYNC)) {
+            final AccountMapping accounts = newAccounts();
+            accounts.attachJournal(journal);
+            assertEquals(AccountMapping.OK, accounts.tryChangeAccountAmount(BANK_ID, 1, 250));
+            assertEquals(AccountMapping.OK, accounts.tryChangeAccountAmount(BANK_ID, 2, -400));
+            assertEquals(AccountMapping.INSUFFICIENT_FUNDS, accounts.tryChangeAccountAmount(BANK_ID, 2, -10_000));
+        }
+
+        final AccountMapping restored = newAccounts();
+        try (TransactionJournal journal = TransactionJournal.open(path, TransactionJournal.Durability.SYNC)) {
+            assertEquals(2, journal.replay(restored));
+        }
+        assertEquals(1_250, restored.tryGetAccountBalance(BANK_ID, 1));
+        assertEquals(1_600, restored.tryGetAccountBalance(BANK_ID, 2));
+    }
+
+    @Test
+    void transferCutOffInItsSecondRecordIsNotReplayed() throws IOException {
+        assertCutOffTransferIgnored(5);
+    }
+
+    @Test
+    void transferMissingItsSecondRecordIsNotReplayed() throws IOException {
+        assertCutOffTransferIgnored(RECORD_SIZE);
+    }
+
+    /**
+     * Logs a deposit and a transfer, cuts the given number of bytes off the end of the
+     * journal, and checks that only the deposit is replayed.
+     */
+    private void assertCutOffTransferIgnored(final int bytesLost) throws IOException {
+        final Path path = dir.resolve("journal");
+        try (TransactionJournal journal = TransactionJournal.open(path, TransactionJournal.Durability.SYNC)) {
+            final AccountMapping accounts = newAccounts();
+            accounts.attachJournal(journal);
+            assertEquals(AccountMapping.OK, accounts.tryChangeAccountAmount(BANK_ID, 1, 100));
+            assertEquals(AccountMapping.OK, accounts.tryTransfer(BANK_ID, 1, BANK_ID, 2, 300));
+        }
+        final long size = Files.size(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(size - bytesLost);
+        }
+
+        final AccountMapping restored = newAccounts();
+        try (TransactionJournal journal = TransactionJournal.open(path, TransactionJournal.Durability.SYNC)) {
+            assertEquals(1, journal.getRecoveredCount());
+            assertEquals(1, journal.replay(restored));
+
+            restored.attachJournal(journal);  // The torn pair is gone, so new records follow the deposit
+            assertEquals(AccountMapping.OK, restored.tryChangeAccountAmount(BANK_ID, 2, 5));
+        }
+        assertEquals(1_100, restored.tryGetAccountBalance(BANK_ID, 1));
+        assertEquals(2_005, restored.tryGetAccountBalance(BANK_ID, 2));
+
+        final AccountMapping reopened = newAccounts();
+        try (TransactionJournal journal = TransactionJournal.open(path, TransactionJournal.Durability.SYNC)) {
+            assertEquals(2, journal.replay(reopened));
+        }
+        assertEquals(1_100, reopened.tryGetAccountBalance(BANK_ID, 1));
+        assertEquals(2_005, reopened.tryGetAccountBalance(BANK_ID, 2));
+    }
+
+    private static AccountMapping newAccounts() {
+        return new AccountMapping(new long[] {AccountMapping.key(BANK_ID, 1), AccountMapping.key(BANK_ID, 2)},
+                new long[] {1_000, 2_000});
+    }
+}